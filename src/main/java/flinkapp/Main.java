@@ -2,17 +2,34 @@ package flinkapp;
 
 
 import flinkapp.config.Configuration;
+import flinkapp.config.MappingConfig;
+import flinkapp.config.exception.ConfigException;
+import flinkapp.filters.ReplayFilter;
 import flinkapp.mappers.InputMapper;
+import flinkapp.mappers.ReloadableInputMapper;
+import flinkapp.sinks.IngestionThrottle;
+import flinkapp.sinks.JDBCSink;
+import flinkapp.sinks.ReloadableJDBCSink;
+import flinkapp.sinks.TableRouter;
+import flinkapp.sinks.dialect.SinkDialect;
+import flinkapp.sources.BoundedKafkaConsumer;
+import flinkapp.sources.ConfigFileSource;
 import flinkapp.util.JDBCUtil;
+import flinkapp.util.KafkaUtil;
 import flinkapp.util.TimeStampAssigner;
-import org.apache.flink.api.common.typeinfo.TypeInformation;
-import org.apache.flink.api.java.io.jdbc.JDBCAppendTableSink;
+import org.apache.flink.api.common.JobExecutionResult;
 import org.apache.flink.shaded.jackson2.com.fasterxml.jackson.databind.node.ObjectNode;
 import org.apache.flink.streaming.api.CheckpointingMode;
 import org.apache.flink.streaming.api.TimeCharacteristic;
+import org.apache.flink.streaming.api.datastream.BroadcastStream;
 import org.apache.flink.streaming.api.datastream.DataStream;
+import org.apache.flink.streaming.api.datastream.DataStreamSink;
+import org.apache.flink.streaming.api.datastream.DataStreamSource;
+import org.apache.flink.streaming.api.datastream.SingleOutputStreamOperator;
 import org.apache.flink.streaming.api.environment.StreamExecutionEnvironment;
+import org.apache.flink.streaming.api.functions.sink.DiscardingSink;
 import org.apache.flink.streaming.connectors.kafka.FlinkKafkaConsumer011;
+import org.apache.flink.streaming.connectors.kafka.FlinkKafkaConsumerBase;
 import org.apache.flink.streaming.util.serialization.JSONKeyValueDeserializationSchema;
 import org.apache.flink.types.Row;
 import org.apache.log4j.Logger;
@@ -20,7 +37,9 @@ import org.apache.log4j.Logger;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.regex.Pattern;
 
 /**
  * A Generic configurable Flink app, which takes source data from Kafka topic and
@@ -55,46 +74,276 @@ public class Main {
   private void start() throws Exception {
     StreamExecutionEnvironment flinkEnv = StreamExecutionEnvironment.getExecutionEnvironment();
     flinkEnv.setStreamTimeCharacteristic(TimeCharacteristic.EventTime);
-    flinkEnv.enableCheckpointing(conf.getInt(Configuration.CHECKPOINTING_INTERVAL), CheckpointingMode.EXACTLY_ONCE);
+
+    boolean backfill = conf.getBoolean(Configuration.BACKFILL_ENABLED);
+    if (backfill) {
+      // duplicates are ignored by the sink, so at-least-once with rare checkpoints is enough for a backfill
+      flinkEnv.enableCheckpointing(conf.getInt(Configuration.BACKFILL_CHECKPOINTING_INTERVAL), CheckpointingMode.AT_LEAST_ONCE);
+      if (conf.getInt(Configuration.BACKFILL_PARALLELISM) > 0) {
+        flinkEnv.setParallelism(conf.getInt(Configuration.BACKFILL_PARALLELISM));
+      }
+    } else {
+      flinkEnv.enableCheckpointing(conf.getInt(Configuration.CHECKPOINTING_INTERVAL), CheckpointingMode.EXACTLY_ONCE);
+    }
+
+    if (!conf.getBoolean(Configuration.OPERATOR_CHAINING)) {
+      flinkEnv.disableOperatorChaining();
+    }
 
     Properties props = new Properties();
     props.setProperty("bootstrap.servers", conf.getString(Configuration.BOOTSTRAP_SERVERS));
     props.setProperty("group.id", conf.getString(Configuration.GROUP_ID));
+    for (Map.Entry<String, Object> entry : conf.originalsWithPrefix(Configuration.KAFKA_CONSUMER_PREFIX).entrySet()) {
+      props.setProperty(entry.getKey(), entry.getValue().toString());
+    }
+    if (conf.getLong(Configuration.PARTITION_DISCOVERY_INTERVAL) > 0) {
+      props.setProperty(FlinkKafkaConsumerBase.KEY_PARTITION_DISCOVERY_INTERVAL_MILLIS,
+          String.valueOf(conf.getLong(Configuration.PARTITION_DISCOVERY_INTERVAL)));
+    }
 
-    FlinkKafkaConsumer011<ObjectNode> kafkaSource =
-        new FlinkKafkaConsumer011<>(conf.getString(Configuration.TOPIC_NAME), new JSONKeyValueDeserializationSchema(true), props);
+    LOG.info("Kafka consumer properties: " + props.stringPropertyNames());
+
+    FlinkKafkaConsumer011<ObjectNode> kafkaSource = backfill ? createBackfillSource(props) : createSource(props);
     kafkaSource.assignTimestampsAndWatermarks(new TimeStampAssigner());
-    DataStream<ObjectNode> stream = flinkEnv.addSource(kafkaSource);
+    DataStreamSource<ObjectNode> source = flinkEnv.addSource(kafkaSource);
+    source.slotSharingGroup(conf.getString(Configuration.SOURCE_SLOT_SHARING_GROUP));
+    if (conf.getInt(Configuration.SOURCE_PARALLELISM) > 0) {
+      source.setParallelism(conf.getInt(Configuration.SOURCE_PARALLELISM));
+    }
+    if (backfill) {
+      // a subtask without partitions finishes right away, and checkpoints are aborted once a source task finished
+      int partitionCount = ((BoundedKafkaConsumer) kafkaSource).getPartitionCount();
+      if (source.getParallelism() > partitionCount) {
+        LOG.info("Backfill source parallelism capped to the " + partitionCount + " partitions of the topic");
+        source.setParallelism(partitionCount);
+      }
+    }
+    DataStream<ObjectNode> stream = source;
 
     LOG.info("Flink Kafka consumer initialized along with event-based watermarking support");
 
-    DataStream<Row> rowStream = stream.map(new InputMapper(
-            (List<String>)conf.getList(Configuration.KAFKA_FIELD_NAMES),
-            (List<String>)conf.getList(Configuration.KAFKA_FIELD_TYPES)
-    )).uid("Input Mapper").name("Input Mapper");
+    SinkDialect dialect = SinkDialect.forName(conf.getString(Configuration.SINK_DIALECT));
+    String driverName = conf.getString(Configuration.SINK_DRIVER_NAME).isEmpty() ?
+        dialect.getDriverName() : conf.getString(Configuration.SINK_DRIVER_NAME);
+
+    String table = conf.getString(Configuration.SINK_SCHEMA) + "." + conf.getString(Configuration.SINK_TABLE);
+    String offsetsTable = null;
+    if (conf.getBoolean(Configuration.RECOVERY_SKIP_REPLAYED)) {
+      // routed batches reach their tables out of offset order, so a high-water mark could skip lost rows
+      if (conf.getBoolean(Configuration.SINK_ROUTING_ENABLED)) {
+        throw new ConfigException(Configuration.RECOVERY_SKIP_REPLAYED, true,
+            "Replay skipping cannot be combined with " + Configuration.SINK_ROUTING_ENABLED);
+      }
+
+      offsetsTable = conf.getString(Configuration.SINK_SCHEMA) + "." + conf.getString(Configuration.RECOVERY_OFFSETS_TABLE);
+      stream = stream.filter(new ReplayFilter(
+          driverName,
+          conf.getString(Configuration.SINK_DB_URL),
+          conf.getString(Configuration.SINK_USERNAME),
+          conf.getString(Configuration.SINK_PASSWORD),
+          dialect,
+          table,
+          offsetsTable
+      )).setParallelism(source.getParallelism()).uid("Replay Filter").name("Replay Filter");
+
+      LOG.info("Replay filter put in the data pipeline to skip records already committed to the sink");
+    }
+
+    MappingConfig mapping = MappingConfig.fromConfiguration(conf);
+    BroadcastStream<MappingConfig> mappingStream = null;
+    SingleOutputStreamOperator<Row> rowStream;
+
+    if (conf.getBoolean(Configuration.CONFIG_RELOAD_ENABLED)) {
+      // mapper and sink swap mappings at the same barrier only when checkpoints are aligned
+      if (backfill) {
+        throw new ConfigException(Configuration.CONFIG_RELOAD_ENABLED, true,
+            "Mapping reload needs exactly-once checkpoints, disable it with " + Configuration.BACKFILL_ENABLED);
+      }
+      // reloaded mappings are validated against the initial one, which has to be consistent itself
+      mapping.validate();
+
+      mappingStream = flinkEnv.addSource(new ConfigFileSource(
+              conf.getString(Configuration.CONFIG_RELOAD_FILE),
+              conf.getInt(Configuration.CONFIG_RELOAD_INTERVAL),
+              mapping
+      )).setParallelism(1).uid("Config Watcher").name("Config Watcher")
+          .broadcast(MappingConfig.DESCRIPTOR);
+
+      LOG.info("Watching " + conf.getString(Configuration.CONFIG_RELOAD_FILE) + " for mapping changes");
+
+      rowStream = stream.connect(mappingStream).process(new ReloadableInputMapper(mapping))
+          .uid("Input Mapper").name("Input Mapper");
+    } else {
+      rowStream = stream.map(new InputMapper(mapping.getKafkaFieldNames(), mapping.getKafkaFieldTypes()))
+          .uid("Input Mapper").name("Input Mapper");
+    }
+
+    if (conf.getInt(Configuration.MAPPER_PARALLELISM) > 0) {
+      rowStream.setParallelism(conf.getInt(Configuration.MAPPER_PARALLELISM));
+    }
 
     LOG.info("Mapper to transform data put in the data pipeline");
 
 
-    TypeInformation[] FIELD_TYPES = JDBCUtil.getSinkTypes((List<String>)conf.getList(Configuration.SINK_COLUMN_TYPES));
-    String query = conf.getString(Configuration.INSERT_QUERY);
+    String query = mapping.getInsertQuery();
+
+    TableRouter router = null;
+    if (conf.getBoolean(Configuration.SINK_ROUTING_ENABLED)) {
+      router = new TableRouter(
+          conf.getString(Configuration.SINK_SCHEMA),
+          conf.getString(Configuration.SINK_ROUTING_TABLE_TEMPLATE),
+          conf.getString(Configuration.SINK_ROUTING_GRANULARITY));
+      LOG.info("Rows routed to " + conf.getString(Configuration.SINK_ROUTING_GRANULARITY) + " tables created like " + table);
+    } else {
+      LOG.info("Query to be executed on sink: " + query);
+    }
+
+    IngestionThrottle throttle = null;
+    long rowsPerSecond = conf.getLong(Configuration.RATE_LIMIT_ROWS);
+    long bytesPerSecond = conf.getLong(Configuration.RATE_LIMIT_BYTES);
+    boolean feedback = conf.getBoolean(Configuration.RATE_LIMIT_FEEDBACK);
+    if (feedback && rowsPerSecond == 0 && bytesPerSecond == 0) {
+      throw new ConfigException(Configuration.RATE_LIMIT_FEEDBACK, true,
+          "feedback needs a ceiling to back off from, set " + Configuration.RATE_LIMIT_ROWS + " or " +
+              Configuration.RATE_LIMIT_BYTES);
+    }
+    if (rowsPerSecond > 0 || bytesPerSecond > 0) {
+      String lagDbUrl = conf.getString(Configuration.RATE_LIMIT_LAG_DB_URL);
+      throttle = new IngestionThrottle(
+          rowsPerSecond,
+          bytesPerSecond,
+          feedback,
+          conf.getLong(Configuration.RATE_LIMIT_LATENCY_THRESHOLD),
+          conf.getString(Configuration.RATE_LIMIT_LAG_QUERY),
+          lagDbUrl.isEmpty() ? conf.getString(Configuration.SINK_DB_URL) : lagDbUrl,
+          conf.getDouble(Configuration.RATE_LIMIT_LAG_THRESHOLD),
+          conf.getInt(Configuration.RATE_LIMIT_LAG_CHECK_INTERVAL));
+    }
+
+
+    JDBCSink sink = new JDBCSink(
+        driverName,
+        backfill ? JDBCUtil.withBatchRewrite(conf.getString(Configuration.SINK_DB_URL))
+            : conf.getString(Configuration.SINK_DB_URL),
+        conf.getString(Configuration.SINK_USERNAME),
+        conf.getString(Configuration.SINK_PASSWORD),
+        dialect,
+        table,
+        mapping.getSinkColumnNames(),
+        mapping.getSinkColumnTypes(),
+        query,
+        backfill ? conf.getInt(Configuration.BACKFILL_BATCH_SIZE) : conf.getInt(Configuration.SINK_BATCH_SIZE),
+        router,
+        throttle,
+        offsetsTable);
 
-    LOG.info("Query to be executed on sink: " + query);
+    int sinkParallelism = conf.getInt(Configuration.SINK_PARALLELISM);
+    String sinkSlotSharingGroup = conf.getString(Configuration.SINK_SLOT_SHARING_GROUP);
+    int sinkTaskParallelism;
 
+    if (mappingStream != null) {
+      SingleOutputStreamOperator<Void> sinkOperator = rowStream.connect(mappingStream)
+          .process(new ReloadableJDBCSink(sink, mapping))
+          .slotSharingGroup(sinkSlotSharingGroup).uid("MySQL Sink").name("JDBC Sink");
+      DataStreamSink<Void> discardingSink = sinkOperator.addSink(new DiscardingSink<>()).name("Discarding Sink");
+      if (sinkParallelism > 0) {
+        sinkOperator.setParallelism(sinkParallelism);
+        discardingSink.setParallelism(sinkParallelism);
+      }
+      sinkTaskParallelism = sinkOperator.getParallelism();
+    } else {
+      DataStreamSink<Row> sinkOperator = rowStream.addSink(sink)
+          .slotSharingGroup(sinkSlotSharingGroup).uid("MySQL Sink").name("JDBC Sink");
+      if (sinkParallelism > 0) {
+        sinkOperator.setParallelism(sinkParallelism);
+      }
+      sinkTaskParallelism = sinkOperator.getTransformation().getParallelism();
+    }
 
-    JDBCAppendTableSink sink = JDBCAppendTableSink.builder()
-        .setDrivername(conf.getString(Configuration.SINK_DRIVER_NAME))
-        .setDBUrl(conf.getString(Configuration.SINK_DB_URL))
-        .setUsername(conf.getString(Configuration.SINK_USERNAME))
-        .setPassword(conf.getString(Configuration.SINK_PASSWORD))
-        .setQuery(query)
-        .setParameterTypes(FIELD_TYPES)
-        .build();
-    sink.consumeDataStream(rowStream).uid("MySQL Sink").name("MySQL Sink");
+    // a partition spread over several sink subtasks could get a high-water mark past rows still batched by another
+    if (offsetsTable != null && (rowStream.getParallelism() != source.getParallelism()
+        || sinkTaskParallelism != source.getParallelism())) {
+      throw new ConfigException(Configuration.RECOVERY_SKIP_REPLAYED, true,
+          "Replay skipping needs equal source, mapper and sink parallelism, got " + source.getParallelism() + ", " +
+              rowStream.getParallelism() + " and " + sinkTaskParallelism);
+    }
 
     LOG.info("Sink initialized");
 
-    flinkEnv.execute("Executing Flink-to-jdbc job ...");
+    if (!backfill) {
+      flinkEnv.execute("Executing Flink-to-jdbc job ...");
+      return;
+    }
+
+    JobExecutionResult result = flinkEnv.execute("Executing Flink-to-jdbc backfill job ...");
+    long records = result.<Long>getAccumulatorResult(BoundedKafkaConsumer.RECORDS_ACCUMULATOR);
+    long runtime = result.getNetRuntime();
+    LOG.info(String.format("Backfill finished: %d records in %d ms, %.1f records/s",
+        records, runtime, runtime > 0 ? records * 1000.0 / runtime : 0.0));
+  }
+
+  /**
+   * Initializing the Kafka source subscribed to the topic, or to every topic matching the topic pattern
+   * @param props Kafka consumer properties
+   * @return Kafka consumer starting from the configured position
+   */
+  private FlinkKafkaConsumer011<ObjectNode> createSource(Properties props) {
+    String topicPattern = conf.getString(Configuration.TOPIC_PATTERN);
+
+    FlinkKafkaConsumer011<ObjectNode> kafkaSource;
+    if (topicPattern.isEmpty()) {
+      kafkaSource = new FlinkKafkaConsumer011<>(conf.getString(Configuration.TOPIC_NAME),
+          new JSONKeyValueDeserializationSchema(true), props);
+    } else {
+      LOG.info("Subscribing to topics matching " + topicPattern);
+      kafkaSource = new FlinkKafkaConsumer011<>(Pattern.compile(topicPattern),
+          new JSONKeyValueDeserializationSchema(true), props);
+    }
+
+    switch (conf.getString(Configuration.KAFKA_START_POSITION)) {
+      case Configuration.START_FROM_EARLIEST:
+        kafkaSource.setStartFromEarliest();
+        break;
+      case Configuration.START_FROM_LATEST:
+        kafkaSource.setStartFromLatest();
+        break;
+      default:
+        kafkaSource.setStartFromGroupOffsets();
+        break;
+    }
+    return kafkaSource;
+  }
+
+  /**
+   * Initializing a Kafka source bounded by the configured backfill range
+   * Offsets given as timestamps are resolved against the brokers at submission
+   * @param props Kafka consumer properties
+   * @return Kafka consumer that finishes at the end of the range
+   */
+  private FlinkKafkaConsumer011<ObjectNode> createBackfillSource(Properties props) {
+    if (!conf.getString(Configuration.TOPIC_PATTERN).isEmpty()) {
+      throw new ConfigException(Configuration.TOPIC_PATTERN, conf.getString(Configuration.TOPIC_PATTERN),
+          "Backfills read the single topic, unset it with " + Configuration.BACKFILL_ENABLED);
+    }
+    if (!Configuration.START_FROM_GROUP_OFFSETS.equals(conf.getString(Configuration.KAFKA_START_POSITION))) {
+      throw new ConfigException(Configuration.KAFKA_START_POSITION, conf.getString(Configuration.KAFKA_START_POSITION),
+          "Backfills start from the backfill offsets or timestamp, unset it with " + Configuration.BACKFILL_ENABLED);
+    }
+
+    String topic = conf.getString(Configuration.TOPIC_NAME);
+
+    Map<Integer, Long> startOffsets = KafkaUtil.resolveOffsets(props, topic,
+        KafkaUtil.parsePartitionOffsets(Configuration.BACKFILL_START_OFFSETS,
+            (List<String>)conf.getList(Configuration.BACKFILL_START_OFFSETS)),
+        conf.getLong(Configuration.BACKFILL_START_TIMESTAMP), false);
+    Map<Integer, Long> endOffsets = KafkaUtil.resolveOffsets(props, topic,
+        KafkaUtil.parsePartitionOffsets(Configuration.BACKFILL_END_OFFSETS,
+            (List<String>)conf.getList(Configuration.BACKFILL_END_OFFSETS)),
+        conf.getLong(Configuration.BACKFILL_END_TIMESTAMP), true);
+
+    LOG.info("Backfilling topic " + topic + " from offsets " + startOffsets + " to " + endOffsets);
+
+    return new BoundedKafkaConsumer(topic, new JSONKeyValueDeserializationSchema(true), props, startOffsets, endOffsets);
   }
 
 }
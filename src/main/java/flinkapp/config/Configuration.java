@@ -1,11 +1,16 @@
 package flinkapp.config;
 
+import flinkapp.sinks.TableRouter;
+import flinkapp.sinks.dialect.SinkDialect;
+
 import java.io.IOException;
+import java.util.Collections;
 import java.util.Map;
 
 /**
  * Config class having connection properties and details of Kafka source and JDBC sink
  * Also contains details of kafka and jdbc fields that need to be tracked along with some Flink properties
+ * Any Kafka consumer property can be passed through with the kafka.consumer. prefix, e.g. kafka.consumer.fetch.min.bytes
  */
 public class Configuration extends GenericConfig {
 
@@ -14,6 +19,7 @@ public class Configuration extends GenericConfig {
 
   private static Configuration instance;
 
+  public static final String SINK_DIALECT = "sink.dialect";
   public static final String SINK_DRIVER_NAME = "sink.driver.name";
   public static final String SINK_DB_URL = "sink.db.url";
   public static final String SINK_USERNAME = "sink.username";
@@ -29,10 +35,52 @@ public class Configuration extends GenericConfig {
   public static final String SINK_COLUMN_TYPES = "sink.column.types";
   public static final String SINK_COLUMN_NAMES = "sink.column.names";
   public static final String INSERT_QUERY = "insert.query";
+  public static final String RECOVERY_SKIP_REPLAYED = "recovery.skip.replayed";
+  public static final String RECOVERY_OFFSETS_TABLE = "recovery.offsets.table";
+  public static final String SINK_BATCH_SIZE = "sink.batch.size";
+  public static final String BACKFILL_ENABLED = "backfill.enabled";
+  public static final String BACKFILL_START_OFFSETS = "backfill.start.offsets";
+  public static final String BACKFILL_END_OFFSETS = "backfill.end.offsets";
+  public static final String BACKFILL_START_TIMESTAMP = "backfill.start.timestamp";
+  public static final String BACKFILL_END_TIMESTAMP = "backfill.end.timestamp";
+  public static final String BACKFILL_PARALLELISM = "backfill.parallelism";
+  public static final String BACKFILL_BATCH_SIZE = "backfill.batch.size";
+  public static final String BACKFILL_CHECKPOINTING_INTERVAL = "backfill.checkpointing.interval";
+  public static final String SINK_ROUTING_ENABLED = "sink.routing.enabled";
+  public static final String SINK_ROUTING_TABLE_TEMPLATE = "sink.routing.table.template";
+  public static final String SINK_ROUTING_GRANULARITY = "sink.routing.granularity";
+  public static final String CONFIG_RELOAD_ENABLED = "config.reload.enabled";
+  public static final String CONFIG_RELOAD_FILE = "config.reload.file";
+  public static final String CONFIG_RELOAD_INTERVAL = "config.reload.interval";
+  public static final String KAFKA_CONSUMER_PREFIX = "kafka.consumer.";
+  public static final String TOPIC_PATTERN = "topic.pattern";
+  public static final String PARTITION_DISCOVERY_INTERVAL = "partition.discovery.interval";
+  public static final String KAFKA_START_POSITION = "kafka.start.position";
+  public static final String SOURCE_PARALLELISM = "source.parallelism";
+  public static final String MAPPER_PARALLELISM = "mapper.parallelism";
+  public static final String SINK_PARALLELISM = "sink.parallelism";
+  public static final String OPERATOR_CHAINING = "operator.chaining";
+  public static final String SOURCE_SLOT_SHARING_GROUP = "source.slot.sharing.group";
+  public static final String SINK_SLOT_SHARING_GROUP = "sink.slot.sharing.group";
+  public static final String RATE_LIMIT_ROWS = "rate.limit.rows.per.second";
+  public static final String RATE_LIMIT_BYTES = "rate.limit.bytes.per.second";
+  public static final String RATE_LIMIT_FEEDBACK = "rate.limit.feedback.enabled";
+  public static final String RATE_LIMIT_LATENCY_THRESHOLD = "rate.limit.latency.threshold";
+  public static final String RATE_LIMIT_LAG_QUERY = "rate.limit.lag.query";
+  public static final String RATE_LIMIT_LAG_DB_URL = "rate.limit.lag.db.url";
+  public static final String RATE_LIMIT_LAG_THRESHOLD = "rate.limit.lag.threshold";
+  public static final String RATE_LIMIT_LAG_CHECK_INTERVAL = "rate.limit.lag.check.interval";
+
+  public static final String START_FROM_GROUP_OFFSETS = "group-offsets";
+  public static final String START_FROM_EARLIEST = "earliest";
+  public static final String START_FROM_LATEST = "latest";
 
   static {
     DEFINITIONS
-        .define(SINK_DRIVER_NAME, ConfigDefinition.Type.STRING, "com.mysql.jdbc.Driver")
+        .define(SINK_DIALECT, ConfigDefinition.Type.STRING, SinkDialect.MYSQL,
+            ConfigDefinition.SetValidator.in(SinkDialect.MYSQL, SinkDialect.POSTGRESQL))
+        // empty to use the driver of the sink dialect
+        .define(SINK_DRIVER_NAME, ConfigDefinition.Type.STRING, "")
         .define(SINK_DB_URL, ConfigDefinition.Type.STRING,"jdbc:mysql://****:3306/")
         .define(SINK_USERNAME, ConfigDefinition.Type.STRING,"***")
         .define(SINK_PASSWORD, ConfigDefinition.Type.STRING,"***")
@@ -50,8 +98,63 @@ public class Configuration extends GenericConfig {
             "string, string, string, string")
         .define(SINK_COLUMN_NAMES, ConfigDefinition.Type.LIST,
             "id, user, name, time_stamp")
+        // only used by the mysql dialect, postgresql merges every batch with INSERT ... ON CONFLICT DO NOTHING
         .define(INSERT_QUERY, ConfigDefinition.Type.STRING,
-            "INSERT IGNORE INTO db_schema.flink_sink (id, user, name, time_stamp) VALUES (?, ?, ?, ?)");
+            "INSERT IGNORE INTO db_schema.flink_sink (id, user, name, time_stamp) VALUES (?, ?, ?, ?)")
+        .define(RECOVERY_SKIP_REPLAYED, ConfigDefinition.Type.BOOLEAN, false)
+        // kept up to date by the sink after every batch, created in sink.schema if missing
+        .define(RECOVERY_OFFSETS_TABLE, ConfigDefinition.Type.STRING, "flink_sink_offsets")
+        .define(SINK_BATCH_SIZE, ConfigDefinition.Type.INT, 5000, ConfigDefinition.Range.atLeast(1))
+        .define(BACKFILL_ENABLED, ConfigDefinition.Type.BOOLEAN, false)
+        // comma separated partition:offset pairs, these take precedence over the timestamps
+        .define(BACKFILL_START_OFFSETS, ConfigDefinition.Type.LIST, Collections.emptyList())
+        .define(BACKFILL_END_OFFSETS, ConfigDefinition.Type.LIST, Collections.emptyList())
+        // epoch millis, -1 to start from the earliest offsets / stop at the latest offsets at submission
+        .define(BACKFILL_START_TIMESTAMP, ConfigDefinition.Type.LONG, -1L)
+        .define(BACKFILL_END_TIMESTAMP, ConfigDefinition.Type.LONG, -1L)
+        // -1 keeps the parallelism of the execution environment, the source never runs more subtasks than partitions
+        .define(BACKFILL_PARALLELISM, ConfigDefinition.Type.INT, -1)
+        .define(BACKFILL_BATCH_SIZE, ConfigDefinition.Type.INT, 50000, ConfigDefinition.Range.atLeast(1))
+        // checkpoints stop once the first source subtask has read all its partitions,
+        // a failure after that replays the range from the last checkpoint taken
+        .define(BACKFILL_CHECKPOINTING_INTERVAL, ConfigDefinition.Type.INT, 600000)
+        // not compatible with recovery.skip.replayed, batches of different tables are not written in offset order
+        .define(SINK_ROUTING_ENABLED, ConfigDefinition.Type.BOOLEAN, false)
+        // %s is replaced by the event date (yyyyMMdd) or hour (yyyyMMddHH) in UTC, created like sink.table
+        .define(SINK_ROUTING_TABLE_TEMPLATE, ConfigDefinition.Type.STRING, "flink_sink_%s")
+        .define(SINK_ROUTING_GRANULARITY, ConfigDefinition.Type.STRING, TableRouter.DAILY,
+            ConfigDefinition.SetValidator.in(TableRouter.DAILY, TableRouter.HOURLY))
+        .define(CONFIG_RELOAD_ENABLED, ConfigDefinition.Type.BOOLEAN, false)
+        // may override kafka.field.names, kafka.field.types, sink.column.types and insert.query
+        .define(CONFIG_RELOAD_FILE, ConfigDefinition.Type.STRING, "flinkapp-mapping.conf")
+        .define(CONFIG_RELOAD_INTERVAL, ConfigDefinition.Type.INT, 10000, ConfigDefinition.Range.atLeast(1))
+        // regex of the topics to subscribe to instead of the single topic, new topics are picked up by partition discovery
+        .define(TOPIC_PATTERN, ConfigDefinition.Type.STRING, "")
+        // milliseconds between two discoveries of new partitions and topics, -1 to disable
+        .define(PARTITION_DISCOVERY_INTERVAL, ConfigDefinition.Type.LONG, -1L)
+        .define(KAFKA_START_POSITION, ConfigDefinition.Type.STRING, START_FROM_GROUP_OFFSETS,
+            ConfigDefinition.SetValidator.in(START_FROM_GROUP_OFFSETS, START_FROM_EARLIEST, START_FROM_LATEST))
+        // -1 keeps the parallelism of the execution environment
+        .define(SOURCE_PARALLELISM, ConfigDefinition.Type.INT, -1)
+        .define(MAPPER_PARALLELISM, ConfigDefinition.Type.INT, -1)
+        .define(SINK_PARALLELISM, ConfigDefinition.Type.INT, -1)
+        .define(OPERATOR_CHAINING, ConfigDefinition.Type.BOOLEAN, true)
+        .define(SOURCE_SLOT_SHARING_GROUP, ConfigDefinition.Type.STRING, "default")
+        .define(SINK_SLOT_SHARING_GROUP, ConfigDefinition.Type.STRING, "default")
+        // ceilings for the whole job, split between the sink subtasks, 0 for no limit
+        .define(RATE_LIMIT_ROWS, ConfigDefinition.Type.LONG, 0L, ConfigDefinition.Range.atLeast(0))
+        .define(RATE_LIMIT_BYTES, ConfigDefinition.Type.LONG, 0L, ConfigDefinition.Range.atLeast(0))
+        // lowers the rate below the ceilings on slow batches and replication lag
+        .define(RATE_LIMIT_FEEDBACK, ConfigDefinition.Type.BOOLEAN, false)
+        // milliseconds a batch may take before backing off
+        .define(RATE_LIMIT_LATENCY_THRESHOLD, ConfigDefinition.Type.LONG, 2000L, ConfigDefinition.Range.atLeast(1))
+        // must return the replication lag in seconds, one row per replica, the highest one counts
+        // e.g. on MySQL with pt-heartbeat: SELECT TIMESTAMPDIFF(SECOND, ts, UTC_TIMESTAMP()) FROM percona.heartbeat
+        .define(RATE_LIMIT_LAG_QUERY, ConfigDefinition.Type.STRING, "")
+        // empty to run the lag query on sink.db.url
+        .define(RATE_LIMIT_LAG_DB_URL, ConfigDefinition.Type.STRING, "")
+        .define(RATE_LIMIT_LAG_THRESHOLD, ConfigDefinition.Type.DOUBLE, 10.0)
+        .define(RATE_LIMIT_LAG_CHECK_INTERVAL, ConfigDefinition.Type.INT, 5000, ConfigDefinition.Range.atLeast(1));
   }
 
   public static Configuration getConf() throws IOException {
@@ -63,6 +63,24 @@ public class GenericConfig {
     return copy;
   }
 
+  /**
+   * @param prefix prefix of the pass-through configurations
+   * @return the original configurations starting with the prefix, with the prefix stripped
+   * system properties take precedence over the configuration file, as for the defined configurations
+   */
+  public Map<String, Object> originalsWithPrefix(String prefix) {
+    Map<String, Object> result = new HashMap<String, Object>();
+    for (Map.Entry<String, ?> entry : originalConfigs.entrySet()) {
+      if (entry.getKey().startsWith(prefix) && entry.getKey().length() > prefix.length())
+        result.put(entry.getKey().substring(prefix.length()), entry.getValue());
+    }
+    for (String name : System.getProperties().stringPropertyNames()) {
+      if (name.startsWith(prefix) && name.length() > prefix.length())
+        result.put(name.substring(prefix.length()), System.getProperty(name));
+    }
+    return result;
+  }
+
   public Map<String, Object> getParsedConfigs() {
     return values;
   }
@@ -0,0 +1,170 @@
+package flinkapp.config;
+
+import flinkapp.config.exception.ConfigException;
+import org.apache.flink.api.common.state.MapStateDescriptor;
+import org.apache.flink.api.common.typeinfo.TypeInformation;
+import org.apache.flink.api.common.typeinfo.Types;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * The part of the configuration that can be changed while the job is running:
+ * the Kafka fields to be extracted, the sink column types and the insert query
+ * The sink column names are fixed for the lifetime of the job, they are only carried along to validate against
+ * Broadcast to the mapper and the sink, which keep the latest one in broadcast state
+ */
+public class MappingConfig implements Serializable {
+
+  public static final MapStateDescriptor<String, MappingConfig> DESCRIPTOR =
+      new MapStateDescriptor<>("mapping-config", Types.STRING, TypeInformation.of(MappingConfig.class));
+  public static final String CURRENT = "current";
+
+  private static final List<String> KAFKA_TYPES = Arrays.asList("string", "int", "long", "double", "boolean");
+  private static final List<String> SINK_TYPES = Arrays.asList("string", "int", "long", "double", "boolean", "decimal");
+
+  private final ArrayList<String> kafkaFieldNames;
+  private final ArrayList<String> kafkaFieldTypes;
+  private final ArrayList<String> sinkColumnNames;
+  private final ArrayList<String> sinkColumnTypes;
+  private final String insertQuery;
+
+  public MappingConfig(List<String> kafkaFieldNames, List<String> kafkaFieldTypes, List<String> sinkColumnNames,
+                       List<String> sinkColumnTypes, String insertQuery) {
+    this.kafkaFieldNames = new ArrayList<>(kafkaFieldNames);
+    this.kafkaFieldTypes = new ArrayList<>(kafkaFieldTypes);
+    this.sinkColumnNames = new ArrayList<>(sinkColumnNames);
+    this.sinkColumnTypes = new ArrayList<>(sinkColumnTypes);
+    this.insertQuery = insertQuery;
+  }
+
+  /**
+   * @param conf job configuration
+   * @return the mapping the job was started with
+   */
+  @SuppressWarnings("unchecked")
+  public static MappingConfig fromConfiguration(Configuration conf) {
+    return new MappingConfig(
+        (List<String>) conf.getList(Configuration.KAFKA_FIELD_NAMES),
+        (List<String>) conf.getList(Configuration.KAFKA_FIELD_TYPES),
+        (List<String>) conf.getList(Configuration.SINK_COLUMN_NAMES),
+        (List<String>) conf.getList(Configuration.SINK_COLUMN_TYPES),
+        conf.getString(Configuration.INSERT_QUERY));
+  }
+
+  /**
+   * @param props properties overriding the mapping
+   * @param defaults mapping used for the properties that are not set
+   * @return the validated mapping
+   */
+  @SuppressWarnings("unchecked")
+  public static MappingConfig fromProperties(Map<?, ?> props, MappingConfig defaults) {
+    ConfigDefinition definitions = Configuration.DEFINITIONS;
+
+    // routed inserts and the COPY column list are built from the column names when the job starts
+    if (props.containsKey(Configuration.SINK_COLUMN_NAMES)) {
+      throw new ConfigException(Configuration.SINK_COLUMN_NAMES, props.get(Configuration.SINK_COLUMN_NAMES),
+          "Sink columns cannot be reloaded, restart the job to change them");
+    }
+
+    MappingConfig mapping = new MappingConfig(
+        props.containsKey(Configuration.KAFKA_FIELD_NAMES) ? (List<String>) definitions.parseType(
+            Configuration.KAFKA_FIELD_NAMES, props.get(Configuration.KAFKA_FIELD_NAMES), ConfigDefinition.Type.LIST)
+            : defaults.kafkaFieldNames,
+        props.containsKey(Configuration.KAFKA_FIELD_TYPES) ? (List<String>) definitions.parseType(
+            Configuration.KAFKA_FIELD_TYPES, props.get(Configuration.KAFKA_FIELD_TYPES), ConfigDefinition.Type.LIST)
+            : defaults.kafkaFieldTypes,
+        defaults.sinkColumnNames,
+        props.containsKey(Configuration.SINK_COLUMN_TYPES) ? (List<String>) definitions.parseType(
+            Configuration.SINK_COLUMN_TYPES, props.get(Configuration.SINK_COLUMN_TYPES), ConfigDefinition.Type.LIST)
+            : defaults.sinkColumnTypes,
+        props.containsKey(Configuration.INSERT_QUERY) ? (String) definitions.parseType(
+            Configuration.INSERT_QUERY, props.get(Configuration.INSERT_QUERY), ConfigDefinition.Type.STRING)
+            : defaults.insertQuery);
+    mapping.validate();
+    return mapping;
+  }
+
+  /**
+   * check that the fields, the columns and the query parameters line up
+   * the row written to the sink holds the generated key followed by the Kafka fields
+   */
+  public void validate() {
+    if (kafkaFieldNames.size() != kafkaFieldTypes.size()) {
+      throw new ConfigException(Configuration.KAFKA_FIELD_TYPES, kafkaFieldTypes,
+          "Expected " + kafkaFieldNames.size() + " types, one for each of " + kafkaFieldNames);
+    }
+    for (String type : kafkaFieldTypes) {
+      new ConfigDefinition.SetValidator<>(KAFKA_TYPES).validate(Configuration.KAFKA_FIELD_TYPES, type);
+    }
+    if (sinkColumnTypes.size() != sinkColumnNames.size()) {
+      throw new ConfigException(Configuration.SINK_COLUMN_TYPES, sinkColumnTypes,
+          "Expected " + sinkColumnNames.size() + " types, one for each of " + sinkColumnNames);
+    }
+    if (sinkColumnTypes.size() != kafkaFieldNames.size() + 1) {
+      throw new ConfigException(Configuration.SINK_COLUMN_TYPES, sinkColumnTypes,
+          "Expected " + (kafkaFieldNames.size() + 1) + " types, the key column followed by the Kafka fields");
+    }
+    for (String type : sinkColumnTypes) {
+      new ConfigDefinition.SetValidator<>(SINK_TYPES).validate(Configuration.SINK_COLUMN_TYPES, type);
+    }
+    long parameters = insertQuery.chars().filter(c -> c == '?').count();
+    if (parameters != sinkColumnTypes.size()) {
+      throw new ConfigException(Configuration.INSERT_QUERY, insertQuery,
+          "Expected " + sinkColumnTypes.size() + " parameters, one for each sink column");
+    }
+  }
+
+  public List<String> getKafkaFieldNames() {
+    return kafkaFieldNames;
+  }
+
+  public List<String> getKafkaFieldTypes() {
+    return kafkaFieldTypes;
+  }
+
+  public List<String> getSinkColumnNames() {
+    return sinkColumnNames;
+  }
+
+  public List<String> getSinkColumnTypes() {
+    return sinkColumnTypes;
+  }
+
+  public String getInsertQuery() {
+    return insertQuery;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (o == null || getClass() != o.getClass()) return false;
+    MappingConfig that = (MappingConfig) o;
+    return kafkaFieldNames.equals(that.kafkaFieldNames) &&
+        kafkaFieldTypes.equals(that.kafkaFieldTypes) &&
+        sinkColumnNames.equals(that.sinkColumnNames) &&
+        sinkColumnTypes.equals(that.sinkColumnTypes) &&
+        insertQuery.equals(that.insertQuery);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(kafkaFieldNames, kafkaFieldTypes, sinkColumnNames, sinkColumnTypes, insertQuery);
+  }
+
+  @Override
+  public String toString() {
+    return "MappingConfig{" +
+        "kafkaFieldNames=" + kafkaFieldNames +
+        ", kafkaFieldTypes=" + kafkaFieldTypes +
+        ", sinkColumnNames=" + sinkColumnNames +
+        ", sinkColumnTypes=" + sinkColumnTypes +
+        ", insertQuery='" + insertQuery + '\'' +
+        '}';
+  }
+
+}
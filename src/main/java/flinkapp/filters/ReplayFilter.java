@@ -0,0 +1,132 @@
+package flinkapp.filters;
+
+import flinkapp.sinks.dialect.SinkDialect;
+import flinkapp.util.JDBCUtil;
+import org.apache.flink.api.common.functions.RichFilterFunction;
+import org.apache.flink.configuration.Configuration;
+import org.apache.flink.shaded.jackson2.com.fasterxml.jackson.databind.JsonNode;
+import org.apache.flink.shaded.jackson2.com.fasterxml.jackson.databind.node.ObjectNode;
+import org.apache.log4j.Logger;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+
+import static flinkapp.util.JSONConstants.*;
+
+/**
+ * Filter to drop Kafka messages that were already committed to the JDBC sink
+ * The per-partition high-water marks are read from the offsets table every time the task is (re)started,
+ * so the records replayed after restoring a checkpoint never reach the database
+ * The table holds one row per sink table and partition, upserted by the JDBCSink once the rows up to the offset are written
+ * The marks are ignored while the sink table is empty, e.g. truncated or recreated since they were written
+ * Only safe while every partition is written in order by a single sink subtask (forward partitioning)
+ */
+public class ReplayFilter extends RichFilterFunction<ObjectNode> {
+
+  private static final Logger LOG = Logger.getLogger(ReplayFilter.class);
+
+  private final String driverName;
+  private final String dbUrl;
+  private final String username;
+  private final String password;
+  private final SinkDialect dialect;
+  private final String sinkTable;
+  private final String offsetsTable;
+
+  private transient Map<String, Long> highWaterMarks;
+  private transient long skippedRecords;
+
+  /**
+   * Constructor
+   * @param driverName JDBC driver of the sink
+   * @param dbUrl JDBC url of the sink
+   * @param username sink username
+   * @param password sink password
+   * @param dialect dialect of the sink database
+   * @param sinkTable schema qualified sink table the marks are kept for
+   * @param offsetsTable schema qualified table of the committed offsets
+   */
+  public ReplayFilter(String driverName, String dbUrl, String username, String password, SinkDialect dialect,
+                      String sinkTable, String offsetsTable) {
+    this.driverName = driverName;
+    this.dbUrl = dbUrl;
+    this.username = username;
+    this.password = password;
+    this.dialect = dialect;
+    this.sinkTable = sinkTable;
+    this.offsetsTable = offsetsTable;
+  }
+
+  /**
+   * Reads the committed high-water mark of every partition of the sink table from the offsets table, created if missing
+   * @param parameters Flink configuration of the operator
+   * @throws Exception thrown while querying the sink
+   */
+  @Override
+  public void open(Configuration parameters) throws Exception {
+    highWaterMarks = new HashMap<>();
+    skippedRecords = 0;
+
+    try (Connection connection = JDBCUtil.getConnection(driverName, dbUrl, username, password)) {
+      try (Statement statement = connection.createStatement()) {
+        statement.execute(dialect.getCreateOffsetsTableStatement(offsetsTable));
+        try (ResultSet resultSet = statement.executeQuery("SELECT 1 FROM " + sinkTable + " LIMIT 1")) {
+          if (!resultSet.next()) {
+            LOG.info("Sink table " + sinkTable + " is empty, ignoring its committed high-water marks");
+            return;
+          }
+        }
+      }
+
+      try (PreparedStatement statement = connection.prepareStatement(
+          "SELECT kafka_topic, kafka_partition, kafka_offset FROM " + offsetsTable + " WHERE sink_table = ?")) {
+        statement.setString(1, sinkTable);
+        try (ResultSet resultSet = statement.executeQuery()) {
+          while (resultSet.next()) {
+            highWaterMarks.put(getPartitionKey(resultSet.getString(1), resultSet.getInt(2)), resultSet.getLong(3));
+          }
+        }
+      }
+    }
+
+    LOG.info("Committed high-water marks read from sink: " + highWaterMarks);
+  }
+
+  /**
+   * @param data Input JSON data that we get from Kafka source
+   * @return false if the message is at or below the committed high-water mark of its partition
+   */
+  @Override
+  public boolean filter(ObjectNode data) {
+    if (highWaterMarks.isEmpty()) {
+      return true;
+    }
+
+    JsonNode metadata = data.get(JSON_METADATA);
+    String partitionKey = getPartitionKey(metadata.get(JSON_TOPIC).asText(), metadata.get(JSON_PARTITION).asInt());
+    Long highWaterMark = highWaterMarks.get(partitionKey);
+
+    if (highWaterMark == null) {
+      return true;
+    }
+    if (metadata.get(JSON_OFFSET).asLong() <= highWaterMark) {
+      skippedRecords++;
+      return false;
+    }
+
+    // offsets only grow within a partition, nothing more to skip for it
+    highWaterMarks.remove(partitionKey);
+    LOG.info("Partition " + partitionKey + " caught up with its high-water mark " + highWaterMark +
+        ", replayed records skipped so far: " + skippedRecords);
+    return true;
+  }
+
+  private static String getPartitionKey(String topic, int partition) {
+    return topic + "_" + partition;
+  }
+
+}
@@ -0,0 +1,84 @@
+package flinkapp.mappers;
+
+import flinkapp.config.MappingConfig;
+import org.apache.flink.api.common.state.BroadcastState;
+import org.apache.flink.runtime.state.FunctionInitializationContext;
+import org.apache.flink.runtime.state.FunctionSnapshotContext;
+import org.apache.flink.shaded.jackson2.com.fasterxml.jackson.databind.node.ObjectNode;
+import org.apache.flink.streaming.api.checkpoint.CheckpointedFunction;
+import org.apache.flink.streaming.api.functions.co.BroadcastProcessFunction;
+import org.apache.flink.types.Row;
+import org.apache.flink.util.Collector;
+import org.apache.log4j.Logger;
+
+/**
+ * InputMapper whose fields can be changed while the job is running
+ * A new mapping received on the broadcast stream is compiled into a new InputMapper right away,
+ * and swapped in at the next checkpoint barrier, together with the sink, which needs aligned exactly-once checkpoints
+ */
+public class ReloadableInputMapper extends BroadcastProcessFunction<ObjectNode, MappingConfig, Row>
+    implements CheckpointedFunction {
+
+  private static final Logger LOG = Logger.getLogger(ReloadableInputMapper.class);
+
+  private final MappingConfig initialMapping;
+
+  private transient MappingConfig activeMapping;
+  private transient InputMapper activeMapper;
+  private transient MappingConfig pendingMapping;
+  private transient InputMapper pendingMapper;
+
+  /**
+   * Constructor
+   * @param initialMapping mapping used until a new one is received
+   */
+  public ReloadableInputMapper(MappingConfig initialMapping) {
+    this.initialMapping = initialMapping;
+  }
+
+  @Override
+  public void initializeState(FunctionInitializationContext context) throws Exception {
+    BroadcastState<String, MappingConfig> state = context.getOperatorStateStore().getBroadcastState(MappingConfig.DESCRIPTOR);
+    MappingConfig restoredMapping = state.get(MappingConfig.CURRENT);
+
+    activeMapping = restoredMapping != null ? restoredMapping : initialMapping;
+    activeMapper = new InputMapper(activeMapping.getKafkaFieldNames(), activeMapping.getKafkaFieldTypes());
+    LOG.info("Mapping in use: " + activeMapping);
+  }
+
+  @Override
+  public void processElement(ObjectNode data, ReadOnlyContext ctx, Collector<Row> out) {
+    out.collect(activeMapper.map(data));
+  }
+
+  @Override
+  public void processBroadcastElement(MappingConfig mapping, Context ctx, Collector<Row> out) throws Exception {
+    ctx.getBroadcastState(MappingConfig.DESCRIPTOR).put(MappingConfig.CURRENT, mapping);
+
+    if (mapping.equals(activeMapping)) {
+      pendingMapping = null;
+      pendingMapper = null;
+      return;
+    }
+    pendingMapping = mapping;
+    pendingMapper = new InputMapper(mapping.getKafkaFieldNames(), mapping.getKafkaFieldTypes());
+    LOG.info("New mapping to be used from the next checkpoint: " + mapping);
+  }
+
+  /**
+   * Swaps the pending mapper in, the records after this barrier are mapped with it
+   * @param context snapshot context
+   */
+  @Override
+  public void snapshotState(FunctionSnapshotContext context) {
+    if (pendingMapper == null) {
+      return;
+    }
+    activeMapping = pendingMapping;
+    activeMapper = pendingMapper;
+    pendingMapping = null;
+    pendingMapper = null;
+    LOG.info("Switched to new mapping at checkpoint " + context.getCheckpointId() + ": " + activeMapping);
+  }
+
+}
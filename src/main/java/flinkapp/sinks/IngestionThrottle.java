@@ -0,0 +1,234 @@
+package flinkapp.sinks;
+
+import flinkapp.util.TokenBucket;
+import org.apache.flink.types.Row;
+import org.apache.log4j.Logger;
+
+import java.io.Serializable;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Limits the rows and bytes per second written to the sink
+ * The ceilings are for the whole job and split evenly between the sink subtasks
+ * In feedback mode the rate is halved whenever a batch takes longer than the latency threshold
+ * or the replication lag query crosses its threshold, and grows back by a tenth of the ceiling with every healthy batch
+ * Throttling backpressures the Kafka source, nothing is dropped
+ * The lag database is connected to on the first check and again after any failure, which only counts as lagging
+ */
+public class IngestionThrottle implements Serializable {
+
+  private static final Logger LOG = Logger.getLogger(IngestionThrottle.class);
+
+  private static final double MIN_FACTOR = 0.01;
+  private static final double BACKOFF_FACTOR = 0.5;
+  private static final double RECOVERY_STEP = 0.1;
+
+  private final long rowsPerSecond;
+  private final long bytesPerSecond;
+  private final boolean feedback;
+  private final long latencyThreshold;
+  private final String lagQuery;
+  private final String lagDbUrl;
+  private final double lagThreshold;
+  private final long lagCheckInterval;
+
+  private transient int parallelism;
+  private transient LagConnectionFactory lagConnectionFactory;
+  private transient TokenBucket rowBucket;
+  private transient TokenBucket byteBucket;
+  private transient Connection lagConnection;
+  private transient double factor;
+  private transient boolean lagging;
+  private transient long nextLagCheck;
+
+  /**
+   * Constructor
+   * @param rowsPerSecond ceiling of rows per second, 0 for no limit
+   * @param bytesPerSecond ceiling of bytes per second, 0 for no limit
+   * @param feedback whether to back off on slow batches and replication lag
+   * @param latencyThreshold milliseconds a batch may take before backing off
+   * @param lagQuery query returning the replication lag in seconds, one row per replica, empty to not check the lag
+   * @param lagDbUrl JDBC url the lag query is run on
+   * @param lagThreshold seconds of replication lag before backing off
+   * @param lagCheckInterval milliseconds between two runs of the lag query
+   */
+  public IngestionThrottle(long rowsPerSecond, long bytesPerSecond, boolean feedback, long latencyThreshold,
+                           String lagQuery, String lagDbUrl, double lagThreshold, long lagCheckInterval) {
+    this.rowsPerSecond = rowsPerSecond;
+    this.bytesPerSecond = bytesPerSecond;
+    this.feedback = feedback;
+    this.latencyThreshold = latencyThreshold;
+    this.lagQuery = lagQuery;
+    this.lagDbUrl = lagDbUrl;
+    this.lagThreshold = lagThreshold;
+    this.lagCheckInterval = lagCheckInterval;
+  }
+
+  /**
+   * @return whether a connection for the lag query is needed
+   */
+  public boolean checksLag() {
+    return feedback && !lagQuery.isEmpty();
+  }
+
+  public String getLagDbUrl() {
+    return lagDbUrl;
+  }
+
+  /**
+   * @param parallelism number of sink subtasks sharing the ceilings
+   * @param lagConnectionFactory opens the connections the lag query is run on, null if not checking the lag
+   */
+  public void open(int parallelism, LagConnectionFactory lagConnectionFactory) {
+    this.parallelism = parallelism;
+    this.lagConnectionFactory = lagConnectionFactory;
+    this.lagConnection = null;
+    this.factor = 1.0;
+    this.lagging = false;
+    this.nextLagCheck = 0L;
+
+    rowBucket = rowsPerSecond > 0 ? new TokenBucket((double) rowsPerSecond / parallelism) : null;
+    byteBucket = bytesPerSecond > 0 ? new TokenBucket((double) bytesPerSecond / parallelism) : null;
+    LOG.info("Ingestion limited to " + rowsPerSecond + " rows/s and " + bytesPerSecond + " bytes/s over " +
+        parallelism + " subtasks, feedback " + (feedback ? "enabled" : "disabled"));
+  }
+
+  /**
+   * wait until the row may be written
+   * @param row row to be written
+   * @throws InterruptedException if interrupted while waiting
+   */
+  public void acquire(Row row) throws InterruptedException {
+    if (lagConnectionFactory != null && System.currentTimeMillis() >= nextLagCheck) {
+      checkLag();
+    }
+    if (rowBucket != null) {
+      rowBucket.acquire(1L);
+    }
+    if (byteBucket != null) {
+      byteBucket.acquire(estimateSize(row));
+    }
+  }
+
+  /**
+   * adapt the rate to the time the last batch took
+   * @param elapsedNanos duration of the batch
+   */
+  public void onFlush(long elapsedNanos) {
+    if (!feedback) {
+      return;
+    }
+    long elapsedMillis = elapsedNanos / 1_000_000L;
+    if (elapsedMillis > latencyThreshold) {
+      backOff("batch took " + elapsedMillis + " ms");
+    } else if (!lagging && factor < 1.0) {
+      factor = Math.min(1.0, factor + RECOVERY_STEP);
+      applyFactor();
+      LOG.debug("Ingestion rate raised to " + factor + " of the ceiling");
+    }
+  }
+
+  public void close() {
+    closeLagConnection();
+  }
+
+  /**
+   * run the lag query and back off if any replica lags, a failing query counts as lagging rather than failing the job
+   */
+  private void checkLag() {
+    nextLagCheck = System.currentTimeMillis() + lagCheckInterval;
+
+    double lag = Double.NaN;
+    try {
+      if (lagConnection == null) {
+        lagConnection = lagConnectionFactory.connect();
+      }
+      try (Statement statement = lagConnection.createStatement()) {
+        // a hung replica must not hold the sink, and with it the checkpoints, for longer than a check interval
+        statement.setQueryTimeout((int) Math.max(1L, lagCheckInterval / 1000L));
+        try (ResultSet resultSet = statement.executeQuery(lagQuery)) {
+          // one row per replica, the slowest one counts, and NULL (e.g. a stopped replica) counts as lagging
+          while (resultSet.next()) {
+            double replicaLag = resultSet.getDouble(1);
+            if (resultSet.wasNull()) {
+              lag = Double.NaN;
+              break;
+            }
+            lag = Double.isNaN(lag) ? replicaLag : Math.max(lag, replicaLag);
+          }
+        }
+      }
+    } catch (SQLException e) {
+      LOG.warn("Replication lag query failed, assuming the replicas lag", e);
+      lag = Double.NaN;
+      // reconnected on the next check
+      closeLagConnection();
+    }
+    lagging = Double.isNaN(lag) || lag > lagThreshold;
+
+    if (lagging) {
+      backOff("replication lag is " + (Double.isNaN(lag) ? "unknown" : lag + " s"));
+    }
+  }
+
+  private void closeLagConnection() {
+    if (lagConnection == null) {
+      return;
+    }
+    try {
+      lagConnection.close();
+    } catch (SQLException e) {
+      LOG.debug("Could not close the replication lag connection", e);
+    }
+    lagConnection = null;
+  }
+
+  private void backOff(String reason) {
+    factor = Math.max(MIN_FACTOR, factor * BACKOFF_FACTOR);
+    applyFactor();
+    LOG.warn("Backing off, " + reason + ", ingestion rate lowered to " + factor + " of the ceiling");
+  }
+
+  private void applyFactor() {
+    if (rowBucket != null) {
+      rowBucket.setRate(rowsPerSecond * factor / parallelism);
+    }
+    if (byteBucket != null) {
+      byteBucket.setRate(bytesPerSecond * factor / parallelism);
+    }
+  }
+
+  /**
+   * Opens a connection to the database the lag query is run on
+   */
+  @FunctionalInterface
+  public interface LagConnectionFactory {
+
+    /**
+     * @return an open connection, owned by the throttle
+     * @throws SQLException if the database cannot be reached
+     */
+    Connection connect() throws SQLException;
+  }
+
+  /**
+   * @param row row to be written
+   * @return rough size of the row, string lengths plus eight bytes for any other field
+   */
+  private static long estimateSize(Row row) {
+    long size = 0L;
+    for (int i = 0; i < row.getArity(); i++) {
+      Object field = row.getField(i);
+      if (field instanceof String) {
+        size += ((String) field).length();
+      } else if (field != null) {
+        size += 8;
+      }
+    }
+    return size;
+  }
+
+}
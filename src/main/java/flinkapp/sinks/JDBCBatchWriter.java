@@ -0,0 +1,115 @@
+package flinkapp.sinks;
+
+import org.apache.flink.api.java.io.jdbc.JDBCUtils;
+import org.apache.flink.types.Row;
+import org.apache.log4j.Logger;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Writes rows in JDBC batches over a single connection
+ * Keeps one prepared statement per table, so rows going to different tables are
+ * grouped per target and flushed together
+ */
+public class JDBCBatchWriter implements SinkWriter {
+
+  private static final Logger LOG = Logger.getLogger(JDBCBatchWriter.class);
+
+  /**
+   * Statements not used in the last batch are closed once more than these are open
+   */
+  private static final int MAX_CACHED_STATEMENTS = 64;
+
+  private final Connection connection;
+  private final int[] sqlTypes;
+
+  private final Map<String, String> insertQueries = new HashMap<>();
+  private final Map<String, PreparedStatement> statements = new HashMap<>();
+  private final Set<String> pendingTables = new HashSet<>();
+
+  /**
+   * Constructor
+   * @param connection open connection to the sink, owned by the writer
+   * @param sqlTypes java.sql.Types of the row fields
+   */
+  public JDBCBatchWriter(Connection connection, int[] sqlTypes) {
+    this.connection = connection;
+    this.sqlTypes = sqlTypes;
+  }
+
+  @Override
+  public void addTarget(String table, String insertQuery) {
+    insertQueries.put(table, insertQuery);
+    LOG.info("Query to be executed on " + table + ": " + insertQuery);
+  }
+
+  @Override
+  public void write(String table, Row row) throws SQLException {
+    PreparedStatement statement = statements.get(table);
+    if (statement == null) {
+      statement = connection.prepareStatement(insertQueries.get(table));
+      statements.put(table, statement);
+    }
+
+    JDBCUtils.setRecordToStatement(statement, sqlTypes, row);
+    statement.addBatch();
+    pendingTables.add(table);
+  }
+
+  @Override
+  public void flush() throws SQLException {
+    if (pendingTables.isEmpty()) {
+      return;
+    }
+
+    for (String table : pendingTables) {
+      statements.get(table).executeBatch();
+    }
+    LOG.debug("Flushed batch to " + pendingTables.size() + " tables");
+
+    if (statements.size() > MAX_CACHED_STATEMENTS) {
+      evictIdleStatements();
+    }
+    pendingTables.clear();
+  }
+
+  @Override
+  public void execute(String sql) throws SQLException {
+    try (Statement statement = connection.createStatement()) {
+      statement.execute(sql);
+    }
+  }
+
+  @Override
+  public void close() throws SQLException {
+    try {
+      flush();
+    } finally {
+      for (PreparedStatement statement : statements.values()) {
+        statement.close();
+      }
+      statements.clear();
+      connection.close();
+    }
+  }
+
+  private void evictIdleStatements() throws SQLException {
+    Iterator<Map.Entry<String, PreparedStatement>> iterator = statements.entrySet().iterator();
+    while (iterator.hasNext()) {
+      Map.Entry<String, PreparedStatement> entry = iterator.next();
+      if (!pendingTables.contains(entry.getKey())) {
+        entry.getValue().close();
+        iterator.remove();
+      }
+    }
+  }
+
+}
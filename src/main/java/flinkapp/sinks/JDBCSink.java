@@ -0,0 +1,245 @@
+package flinkapp.sinks;
+
+import flinkapp.sinks.dialect.SinkDialect;
+import flinkapp.util.JDBCUtil;
+import flinkapp.util.KafkaUtil;
+import org.apache.flink.configuration.Configuration;
+import org.apache.flink.runtime.state.FunctionInitializationContext;
+import org.apache.flink.runtime.state.FunctionSnapshotContext;
+import org.apache.flink.streaming.api.checkpoint.CheckpointedFunction;
+import org.apache.flink.streaming.api.functions.sink.RichSinkFunction;
+import org.apache.flink.streaming.connectors.kafka.internals.KafkaTopicPartition;
+import org.apache.flink.types.Row;
+import org.apache.log4j.Logger;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * JDBC sink writing the rows in batches, flushed on every checkpoint
+ * Rows are inserted into the sink table, or routed to time-partitioned tables by their event timestamp
+ * Duplicate inserts are ignored by the database, which keeps the ingestion exactly-once
+ * How the batches are written depends on the SinkDialect of the database
+ * An optional IngestionThrottle caps the rate of rows written and backs off when the database struggles
+ * With an offsets table, the highest offset written per partition is upserted into it after every batch
+ */
+public class JDBCSink extends RichSinkFunction<Row> implements CheckpointedFunction {
+
+  private static final Logger LOG = Logger.getLogger(JDBCSink.class);
+
+  /**
+   * Routed tables remembered as created, forgotten all at once past this, creating them again is a no-op
+   */
+  private static final int MAX_ROUTED_TABLES = 64;
+
+  private final String driverName;
+  private final String dbUrl;
+  private final String username;
+  private final String password;
+  private final SinkDialect dialect;
+  private final String table;
+  private final ArrayList<String> columnNames;
+  private final int batchSize;
+  private final TableRouter router;
+  private final IngestionThrottle throttle;
+  private final String offsetsTable;
+  private String insertQuery;
+  private ArrayList<String> columnTypes;
+
+  private transient SinkWriter writer;
+  private transient Set<String> routedTables;
+  private transient int batchCount;
+  private transient Map<KafkaTopicPartition, Long> pendingOffsets;
+  private transient Connection offsetsConnection;
+  private transient PreparedStatement offsetsStatement;
+
+  /**
+   * Constructor
+   * @param driverName JDBC driver of the sink
+   * @param dbUrl JDBC url of the sink
+   * @param username sink username
+   * @param password sink password
+   * @param dialect dialect of the sink database
+   * @param table schema qualified sink table, the routed tables are created like it
+   * @param columnNames columns of the sink table
+   * @param columnTypes data types of the columns, as put in the configuration
+   * @param insertQuery query to be executed on sink when rows are not routed
+   * @param batchSize number of rows after which the batch is executed
+   * @param router router to time-partitioned tables, null to insert everything into the sink table
+   * @param throttle limiter of the ingestion rate, null to write as fast as possible
+   * @param offsetsTable schema qualified table of the committed offsets, null to not keep it
+   */
+  public JDBCSink(String driverName, String dbUrl, String username, String password, SinkDialect dialect,
+                  String table, List<String> columnNames, List<String> columnTypes, String insertQuery,
+                  int batchSize, TableRouter router, IngestionThrottle throttle, String offsetsTable) {
+    this.driverName = driverName;
+    this.dbUrl = dbUrl;
+    this.username = username;
+    this.password = password;
+    this.dialect = dialect;
+    this.table = table;
+    this.columnNames = new ArrayList<>(columnNames);
+    this.columnTypes = new ArrayList<>(columnTypes);
+    this.insertQuery = insertQuery;
+    this.batchSize = batchSize;
+    this.router = router;
+    this.throttle = throttle;
+    this.offsetsTable = offsetsTable;
+  }
+
+  @Override
+  public void open(Configuration parameters) throws Exception {
+    routedTables = new HashSet<>();
+    batchCount = 0;
+    pendingOffsets = new HashMap<>();
+    writer = createWriter();
+
+    if (offsetsTable != null) {
+      offsetsConnection = JDBCUtil.getConnection(driverName, dbUrl, username, password);
+      try (Statement statement = offsetsConnection.createStatement()) {
+        statement.execute(dialect.getCreateOffsetsTableStatement(offsetsTable));
+      }
+      offsetsStatement = offsetsConnection.prepareStatement(dialect.getOffsetsUpsertQuery(offsetsTable));
+    }
+
+    if (throttle != null) {
+      throttle.open(getRuntimeContext().getNumberOfParallelSubtasks(), throttle.checksLag() ?
+          () -> JDBCUtil.getConnection(driverName, throttle.getLagDbUrl(), username, password) : null);
+    }
+  }
+
+  /**
+   * switch the insert query and the column types, the rows batched so far are flushed with the previous ones
+   * @param insertQuery query to be executed on sink when rows are not routed
+   * @param columnTypes data types of the columns, as put in the configuration
+   * @throws Exception thrown while flushing or reconnecting
+   */
+  public void reconfigure(String insertQuery, List<String> columnTypes) throws Exception {
+    this.insertQuery = insertQuery;
+    this.columnTypes = new ArrayList<>(columnTypes);
+
+    if (writer != null) {
+      writer.close();
+      commitOffsets();
+      batchCount = 0;
+      routedTables.clear();
+      writer = createWriter();
+    }
+  }
+
+  @Override
+  public void invoke(Row value, Context context) throws Exception {
+    if (throttle != null) {
+      throttle.acquire(value);
+    }
+
+    writer.write(router == null ? table : getRoutedTable(context), value);
+    if (offsetsStatement != null) {
+      String recordKey = String.valueOf(value.getField(0));
+      pendingOffsets.merge(KafkaUtil.getKeyPartition(recordKey), KafkaUtil.getKeyOffset(recordKey), Math::max);
+    }
+    if (++batchCount >= batchSize) {
+      flush();
+    }
+  }
+
+  /**
+   * @param context context of the row, holding its event timestamp
+   * @return the table the row is routed to, created if it is missing
+   * @throws SQLException thrown while creating the table
+   */
+  private String getRoutedTable(Context context) throws SQLException {
+    Long timestamp = context.timestamp();
+    String routedTable = router.getTable(timestamp != null ? timestamp : context.currentProcessingTime());
+    if (!routedTables.contains(routedTable)) {
+      if (routedTables.size() >= MAX_ROUTED_TABLES) {
+        routedTables.clear();
+      }
+      writer.execute(dialect.getCreateTableStatement(routedTable, table));
+      writer.addTarget(routedTable, dialect.getInsertQuery(routedTable, columnNames));
+      routedTables.add(routedTable);
+      LOG.info("Routing rows to table " + routedTable);
+    }
+    return routedTable;
+  }
+
+  @Override
+  public void snapshotState(FunctionSnapshotContext context) throws Exception {
+    flush();
+  }
+
+  private void flush() throws SQLException {
+    if (batchCount == 0) {
+      return;
+    }
+
+    long start = System.nanoTime();
+    writer.flush();
+    batchCount = 0;
+
+    if (throttle != null) {
+      throttle.onFlush(System.nanoTime() - start);
+    }
+    commitOffsets();
+  }
+
+  /**
+   * upsert the highest offset of every partition written since the last call, only once the rows are in the sink
+   * @throws SQLException thrown by the upsert
+   */
+  private void commitOffsets() throws SQLException {
+    if (offsetsStatement == null || pendingOffsets.isEmpty()) {
+      return;
+    }
+
+    for (Map.Entry<KafkaTopicPartition, Long> entry : pendingOffsets.entrySet()) {
+      offsetsStatement.setString(1, table);
+      offsetsStatement.setString(2, entry.getKey().getTopic());
+      offsetsStatement.setInt(3, entry.getKey().getPartition());
+      offsetsStatement.setLong(4, entry.getValue());
+      offsetsStatement.addBatch();
+    }
+    offsetsStatement.executeBatch();
+    pendingOffsets.clear();
+  }
+
+  @Override
+  public void initializeState(FunctionInitializationContext context) {
+    // nothing to restore, every batch is flushed before the checkpoint completes
+  }
+
+  private SinkWriter createWriter() throws Exception {
+    SinkWriter sinkWriter = dialect.createWriter(JDBCUtil.getConnection(driverName, dbUrl, username, password),
+        columnNames, columnTypes);
+    if (router == null) {
+      sinkWriter.addTarget(table, insertQuery);
+    }
+    return sinkWriter;
+  }
+
+  @Override
+  public void close() throws Exception {
+    try {
+      if (writer != null) {
+        writer.close();
+        commitOffsets();
+      }
+    } finally {
+      if (offsetsConnection != null) {
+        offsetsConnection.close();
+      }
+      if (throttle != null) {
+        throttle.close();
+      }
+    }
+  }
+
+}
@@ -0,0 +1,265 @@
+package flinkapp.sinks;
+
+import org.apache.flink.types.Row;
+import org.apache.log4j.Logger;
+import org.postgresql.copy.CopyManager;
+import org.postgresql.core.BaseConnection;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Writes rows to PostgreSQL with the COPY protocol
+ * Every batch is encoded as CSV into a buffer reused across batches, copied into a temporary staging table
+ * and merged into the target with INSERT ... ON CONFLICT DO NOTHING, all in one transaction
+ * Duplicates are thus ignored as with the row-by-row inserts
+ */
+public class PostgresCopyWriter implements SinkWriter {
+
+  private static final Logger LOG = Logger.getLogger(PostgresCopyWriter.class);
+
+  /**
+   * Targets not used in the last batch release their buffer and staging table once more than these are open
+   */
+  private static final int MAX_COPY_TARGETS = 64;
+
+  private final Connection connection;
+  private final CopyManager copyManager;
+  private final String columns;
+  private final String stagingColumns;
+
+  private final Set<String> tables = new HashSet<>();
+  private final Map<String, CopyTarget> targets = new HashMap<>();
+  private int pendingRows;
+
+  /**
+   * Constructor
+   * @param connection open connection to the sink, owned by the writer
+   * @param columnNames columns of the sink tables
+   * @param columnTypes PostgreSQL types of the columns
+   * @throws SQLException if the connection is not a PostgreSQL connection
+   */
+  public PostgresCopyWriter(Connection connection, List<String> columnNames, List<String> columnTypes)
+      throws SQLException {
+    this.connection = connection;
+    this.copyManager = new CopyManager(connection.unwrap(BaseConnection.class));
+    this.columns = String.join(", ", columnNames);
+
+    StringBuilder definitions = new StringBuilder();
+    for (int i = 0; i < columnNames.size(); i++) {
+      definitions.append(i == 0 ? "" : ", ").append(columnNames.get(i)).append(' ').append(columnTypes.get(i));
+    }
+    this.stagingColumns = definitions.toString();
+
+    connection.setAutoCommit(false);
+  }
+
+  /**
+   * @param table schema qualified table name
+   * @param insertQuery not used, rows are merged from the staging table
+   */
+  @Override
+  public void addTarget(String table, String insertQuery) {
+    tables.add(table);
+  }
+
+  @Override
+  public void write(String table, Row row) throws SQLException {
+    CopyTarget target = targets.get(table);
+    if (target == null) {
+      if (!tables.contains(table)) {
+        throw new SQLException("No COPY target registered for " + table);
+      }
+      target = new CopyTarget(table);
+      targets.put(table, target);
+    }
+    try {
+      target.append(row);
+    } catch (IOException e) {
+      throw new SQLException("Could not encode row for COPY into " + table, e);
+    }
+    pendingRows++;
+  }
+
+  @Override
+  public void flush() throws SQLException {
+    if (pendingRows == 0) {
+      return;
+    }
+
+    Set<String> pendingTables = new HashSet<>();
+    try {
+      for (CopyTarget target : targets.values()) {
+        if (target.rows > 0) {
+          pendingTables.add(target.table);
+          target.copy();
+        }
+      }
+      connection.commit();
+    } catch (SQLException | IOException e) {
+      SQLException error = e instanceof SQLException ? (SQLException) e : new SQLException("COPY failed", e);
+      try {
+        connection.rollback();
+      } catch (SQLException rollbackError) {
+        error.addSuppressed(rollbackError);
+      }
+      // staging tables created in the failed transaction are gone as well
+      for (CopyTarget target : targets.values()) {
+        target.stagingCreated = false;
+      }
+      throw error;
+    } finally {
+      for (CopyTarget target : targets.values()) {
+        target.reset();
+      }
+    }
+
+    LOG.debug("Copied " + pendingRows + " rows");
+    pendingRows = 0;
+
+    if (targets.size() > MAX_COPY_TARGETS) {
+      evictIdleTargets(pendingTables);
+    }
+  }
+
+  /**
+   * drop the staging tables of the targets not written in the last batch, along with their buffers
+   * @param pendingTables tables written in the last batch
+   * @throws SQLException thrown while dropping the staging tables
+   */
+  private void evictIdleTargets(Set<String> pendingTables) throws SQLException {
+    try (Statement statement = connection.createStatement()) {
+      Iterator<Map.Entry<String, CopyTarget>> iterator = targets.entrySet().iterator();
+      while (iterator.hasNext()) {
+        CopyTarget target = iterator.next().getValue();
+        if (!pendingTables.contains(target.table)) {
+          if (target.stagingCreated) {
+            statement.execute("DROP TABLE IF EXISTS " + target.stagingTable);
+          }
+          iterator.remove();
+        }
+      }
+    }
+    connection.commit();
+  }
+
+  @Override
+  public void execute(String sql) throws SQLException {
+    try (Statement statement = connection.createStatement()) {
+      statement.execute(sql);
+    }
+    connection.commit();
+  }
+
+  @Override
+  public void close() throws SQLException {
+    try {
+      flush();
+    } finally {
+      connection.close();
+    }
+  }
+
+  /**
+   * Buffer of the rows pending for one table, along with its staging table
+   */
+  private class CopyTarget {
+
+    private final String table;
+    private final String stagingTable;
+    private final CopyBuffer buffer = new CopyBuffer();
+    private final Writer writer = new OutputStreamWriter(buffer, StandardCharsets.UTF_8);
+    private boolean stagingCreated;
+    private int rows;
+
+    private CopyTarget(String table) {
+      this.table = table;
+      this.stagingTable = "staging_" + table.replace('.', '_');
+    }
+
+    private void append(Row row) throws IOException {
+      for (int i = 0; i < row.getArity(); i++) {
+        if (i > 0) {
+          writer.write(',');
+        }
+        writeField(row.getField(i));
+      }
+      writer.write('\n');
+      rows++;
+    }
+
+    /**
+     * CSV field, NULL is an unquoted empty field and strings are always quoted to keep empty strings apart
+     */
+    private void writeField(Object value) throws IOException {
+      if (value == null) {
+        return;
+      }
+      if (value instanceof String) {
+        writer.write('"');
+        writer.write(((String) value).replace("\"", "\"\""));
+        writer.write('"');
+      } else if (value instanceof BigDecimal) {
+        writer.write(((BigDecimal) value).toPlainString());
+      } else {
+        writer.write(value.toString());
+      }
+    }
+
+    private void copy() throws SQLException, IOException {
+      if (rows == 0) {
+        return;
+      }
+      if (!stagingCreated) {
+        try (Statement statement = connection.createStatement()) {
+          statement.execute("CREATE TEMPORARY TABLE IF NOT EXISTS " + stagingTable + " (" + stagingColumns + ") " +
+              "ON COMMIT DELETE ROWS");
+        }
+        stagingCreated = true;
+      }
+
+      writer.flush();
+      copyManager.copyIn("COPY " + stagingTable + " (" + columns + ") FROM STDIN WITH (FORMAT csv)",
+          buffer.toInputStream());
+      try (Statement statement = connection.createStatement()) {
+        statement.executeUpdate("INSERT INTO " + table + " (" + columns + ") SELECT " + columns + " FROM " + stagingTable +
+            " ON CONFLICT DO NOTHING");
+      }
+    }
+
+    private void reset() {
+      buffer.reset();
+      rows = 0;
+    }
+  }
+
+  /**
+   * Byte buffer whose content is read back without copying, and whose capacity is kept on reset
+   */
+  private static class CopyBuffer extends ByteArrayOutputStream {
+
+    private CopyBuffer() {
+      super(64 * 1024);
+    }
+
+    private InputStream toInputStream() {
+      return new ByteArrayInputStream(buf, 0, count);
+    }
+  }
+
+}
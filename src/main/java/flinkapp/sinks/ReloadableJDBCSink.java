@@ -0,0 +1,124 @@
+package flinkapp.sinks;
+
+import flinkapp.config.MappingConfig;
+import org.apache.flink.api.common.state.BroadcastState;
+import org.apache.flink.configuration.Configuration;
+import org.apache.flink.runtime.state.FunctionInitializationContext;
+import org.apache.flink.runtime.state.FunctionSnapshotContext;
+import org.apache.flink.streaming.api.checkpoint.CheckpointedFunction;
+import org.apache.flink.streaming.api.functions.co.BroadcastProcessFunction;
+import org.apache.flink.streaming.api.functions.sink.SinkFunction;
+import org.apache.flink.types.Row;
+import org.apache.flink.util.Collector;
+import org.apache.log4j.Logger;
+
+/**
+ * JDBCSink whose insert query and column types can be changed while the job is running
+ * Sinks cannot consume a broadcast stream, so the rows are written from this function
+ * and nothing is emitted downstream
+ * A new mapping is applied at the next checkpoint barrier, right after flushing the rows batched before it,
+ * which matches the barrier at which the ReloadableInputMapper starts emitting rows for it
+ * This only holds with aligned exactly-once checkpoints, so reloading is not available in backfill mode
+ */
+public class ReloadableJDBCSink extends BroadcastProcessFunction<Row, MappingConfig, Void>
+    implements CheckpointedFunction {
+
+  private static final Logger LOG = Logger.getLogger(ReloadableJDBCSink.class);
+
+  private final JDBCSink sink;
+  private final MappingConfig initialMapping;
+
+  private transient MappingConfig activeMapping;
+  private transient MappingConfig pendingMapping;
+  private transient ElementContext elementContext;
+
+  /**
+   * Constructor
+   * @param sink sink the rows are written with
+   * @param initialMapping mapping the sink was created with
+   */
+  public ReloadableJDBCSink(JDBCSink sink, MappingConfig initialMapping) {
+    this.sink = sink;
+    this.initialMapping = initialMapping;
+  }
+
+  @Override
+  public void initializeState(FunctionInitializationContext context) throws Exception {
+    BroadcastState<String, MappingConfig> state = context.getOperatorStateStore().getBroadcastState(MappingConfig.DESCRIPTOR);
+    MappingConfig restoredMapping = state.get(MappingConfig.CURRENT);
+
+    activeMapping = initialMapping;
+    if (restoredMapping != null && !restoredMapping.equals(initialMapping)) {
+      activate(restoredMapping);
+    }
+  }
+
+  @Override
+  public void open(Configuration parameters) throws Exception {
+    elementContext = new ElementContext();
+    sink.setRuntimeContext(getRuntimeContext());
+    sink.open(parameters);
+  }
+
+  @Override
+  public void processElement(Row value, ReadOnlyContext ctx, Collector<Void> out) throws Exception {
+    elementContext.ctx = ctx;
+    sink.invoke(value, elementContext);
+  }
+
+  @Override
+  public void processBroadcastElement(MappingConfig mapping, Context ctx, Collector<Void> out) throws Exception {
+    ctx.getBroadcastState(MappingConfig.DESCRIPTOR).put(MappingConfig.CURRENT, mapping);
+    pendingMapping = mapping.equals(activeMapping) ? null : mapping;
+  }
+
+  /**
+   * Flushes the rows of the current mapping, then swaps the pending mapping in
+   * @param context snapshot context
+   * @throws Exception thrown while flushing
+   */
+  @Override
+  public void snapshotState(FunctionSnapshotContext context) throws Exception {
+    sink.snapshotState(context);
+
+    if (pendingMapping != null) {
+      activate(pendingMapping);
+      pendingMapping = null;
+      LOG.info("Switched to new mapping at checkpoint " + context.getCheckpointId());
+    }
+  }
+
+  @Override
+  public void close() throws Exception {
+    sink.close();
+  }
+
+  private void activate(MappingConfig mapping) throws Exception {
+    sink.reconfigure(mapping.getInsertQuery(), mapping.getSinkColumnTypes());
+    activeMapping = mapping;
+  }
+
+  /**
+   * Exposes the timestamps of the element being processed to the sink
+   */
+  private class ElementContext implements SinkFunction.Context<Row> {
+
+    private ReadOnlyContext ctx;
+
+    @Override
+    public long currentProcessingTime() {
+      return ctx.currentProcessingTime();
+    }
+
+    @Override
+    public long currentWatermark() {
+      return ctx.currentWatermark();
+    }
+
+    @Override
+    public Long timestamp() {
+      return ctx.timestamp();
+    }
+  }
+
+}
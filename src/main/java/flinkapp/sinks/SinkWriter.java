@@ -0,0 +1,50 @@
+package flinkapp.sinks;
+
+import org.apache.flink.types.Row;
+
+import java.sql.SQLException;
+
+/**
+ * Writes rows to one or more sink tables in batches over a single connection
+ * Rows are buffered until flush is called, deciding when is left to the sink
+ * Implementations are created by the SinkDialect of the database
+ */
+public interface SinkWriter extends AutoCloseable {
+
+  /**
+   * register a table rows can be written to
+   * @param table schema qualified table name
+   * @param insertQuery parameterized query inserting one row into the table, ignoring duplicates
+   * @throws SQLException thrown while preparing the target
+   */
+  void addTarget(String table, String insertQuery) throws SQLException;
+
+  /**
+   * add a row to the batch of the table
+   * @param table a table registered with addTarget
+   * @param row row to be inserted
+   * @throws SQLException thrown while writing the batch
+   */
+  void write(String table, Row row) throws SQLException;
+
+  /**
+   * write the pending batch of every table
+   * @throws SQLException thrown while writing the batch
+   */
+  void flush() throws SQLException;
+
+  /**
+   * execute a statement outside of the batch, e.g. DDL
+   * @param sql statement to be executed
+   * @throws SQLException thrown by the database
+   */
+  void execute(String sql) throws SQLException;
+
+  /**
+   * flush the pending batch and release the connection
+   * @throws SQLException thrown while writing the batch
+   */
+  @Override
+  void close() throws SQLException;
+
+}
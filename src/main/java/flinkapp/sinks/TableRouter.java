@@ -0,0 +1,58 @@
+package flinkapp.sinks;
+
+import java.io.Serializable;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Routes rows to daily or hourly tables named after their event timestamp
+ * Tables are created like the base sink table by the sink, so old data can be dropped table by table
+ */
+public class TableRouter implements Serializable {
+
+  public static final String DAILY = "daily";
+  public static final String HOURLY = "hourly";
+
+  private static final long DAY_MILLIS = 24 * 60 * 60 * 1000L;
+  private static final long HOUR_MILLIS = 60 * 60 * 1000L;
+
+  private final String schema;
+  private final String tableTemplate;
+  private final String suffixPattern;
+  private final long bucketMillis;
+
+  private transient DateTimeFormatter suffixFormatter;
+  private transient long lastBucket;
+  private transient String lastTable;
+
+  /**
+   * Constructor
+   * @param schema schema of the sink tables
+   * @param tableTemplate table name with a %s placeholder for the time suffix
+   * @param granularity either daily or hourly
+   */
+  public TableRouter(String schema, String tableTemplate, String granularity) {
+    this.schema = schema;
+    this.tableTemplate = tableTemplate;
+    this.suffixPattern = HOURLY.equals(granularity) ? "yyyyMMddHH" : "yyyyMMdd";
+    this.bucketMillis = HOURLY.equals(granularity) ? HOUR_MILLIS : DAY_MILLIS;
+  }
+
+  /**
+   * @param timestamp event timestamp in epoch millis
+   * @return schema qualified name of the table the event belongs to
+   */
+  public String getTable(long timestamp) {
+    long bucket = Math.floorDiv(timestamp, bucketMillis);
+    if (lastTable == null || bucket != lastBucket) {
+      if (suffixFormatter == null) {
+        suffixFormatter = DateTimeFormatter.ofPattern(suffixPattern).withZone(ZoneOffset.UTC);
+      }
+      lastTable = schema + "." + String.format(tableTemplate, suffixFormatter.format(Instant.ofEpochMilli(timestamp)));
+      lastBucket = bucket;
+    }
+    return lastTable;
+  }
+
+}
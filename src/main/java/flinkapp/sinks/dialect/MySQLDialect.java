@@ -0,0 +1,50 @@
+package flinkapp.sinks.dialect;
+
+import flinkapp.sinks.JDBCBatchWriter;
+import flinkapp.sinks.SinkWriter;
+import flinkapp.util.JDBCUtil;
+
+import java.sql.Connection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * MySQL dialect, rows are written with JDBC batches of INSERT IGNORE
+ */
+public class MySQLDialect implements SinkDialect {
+
+  @Override
+  public String getDriverName() {
+    return "com.mysql.jdbc.Driver";
+  }
+
+  @Override
+  public String getInsertQuery(String table, List<String> columnNames) {
+    return "INSERT IGNORE INTO " + table + " (" + String.join(", ", columnNames) + ") VALUES (" +
+        String.join(", ", Collections.nCopies(columnNames.size(), "?")) + ")";
+  }
+
+  @Override
+  public String getCreateTableStatement(String table, String baseTable) {
+    return "CREATE TABLE IF NOT EXISTS " + table + " LIKE " + baseTable;
+  }
+
+  @Override
+  public String getCreateOffsetsTableStatement(String table) {
+    return "CREATE TABLE IF NOT EXISTS " + table + " (sink_table VARCHAR(255) NOT NULL, " +
+        "kafka_topic VARCHAR(255) NOT NULL, kafka_partition INT NOT NULL, kafka_offset BIGINT NOT NULL, " +
+        "PRIMARY KEY (sink_table, kafka_topic, kafka_partition))";
+  }
+
+  @Override
+  public String getOffsetsUpsertQuery(String table) {
+    return "INSERT INTO " + table + " (sink_table, kafka_topic, kafka_partition, kafka_offset) VALUES (?, ?, ?, ?) " +
+        "ON DUPLICATE KEY UPDATE kafka_offset = GREATEST(kafka_offset, VALUES(kafka_offset))";
+  }
+
+  @Override
+  public SinkWriter createWriter(Connection connection, List<String> columnNames, List<String> columnTypes) {
+    return new JDBCBatchWriter(connection, JDBCUtil.getSqlTypes(columnTypes));
+  }
+
+}
@@ -0,0 +1,89 @@
+package flinkapp.sinks.dialect;
+
+import flinkapp.sinks.PostgresCopyWriter;
+import flinkapp.sinks.SinkWriter;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * PostgreSQL dialect, rows are written with COPY through a staging table
+ * CREATE TABLE IF NOT EXISTS is not safe against concurrent runs, every sink subtask reaching a new routed table
+ * at once would fail with a duplicate key on pg_type, so the DDL is serialized with an advisory lock
+ */
+public class PostgreSQLDialect implements SinkDialect {
+
+  /**
+   * Map of data types to PostgreSQL column types
+   */
+  private static final HashMap<String, String> COLUMN_TYPE_MAP = new HashMap<String, String>() {{
+    put("string", "text");
+    put("int", "integer");
+    put("long", "bigint");
+    put("double", "double precision");
+    put("boolean", "boolean");
+    put("decimal", "numeric");
+  }};
+
+  @Override
+  public String getDriverName() {
+    return "org.postgresql.Driver";
+  }
+
+  @Override
+  public String getInsertQuery(String table, List<String> columnNames) {
+    return "INSERT INTO " + table + " (" + String.join(", ", columnNames) + ") VALUES (" +
+        String.join(", ", Collections.nCopies(columnNames.size(), "?")) + ") ON CONFLICT DO NOTHING";
+  }
+
+  @Override
+  public String getCreateTableStatement(String table, String baseTable) {
+    return serialized(table, "CREATE TABLE IF NOT EXISTS " + table + " (LIKE " + baseTable + " INCLUDING ALL)");
+  }
+
+  @Override
+  public String getCreateOffsetsTableStatement(String table) {
+    return serialized(table, "CREATE TABLE IF NOT EXISTS " + table + " (sink_table varchar(255) NOT NULL, " +
+        "kafka_topic varchar(255) NOT NULL, kafka_partition integer NOT NULL, kafka_offset bigint NOT NULL, " +
+        "PRIMARY KEY (sink_table, kafka_topic, kafka_partition))");
+  }
+
+  @Override
+  public String getOffsetsUpsertQuery(String table) {
+    return "INSERT INTO " + table + " AS o (sink_table, kafka_topic, kafka_partition, kafka_offset) " +
+        "VALUES (?, ?, ?, ?) ON CONFLICT (sink_table, kafka_topic, kafka_partition) DO UPDATE SET kafka_offset = GREATEST(o.kafka_offset, EXCLUDED.kafka_offset)";
+  }
+
+  @Override
+  public SinkWriter createWriter(Connection connection, List<String> columnNames, List<String> columnTypes)
+      throws SQLException {
+    return new PostgresCopyWriter(connection, columnNames, getColumnTypes(columnTypes));
+  }
+
+  /**
+   * @param table table the DDL creates
+   * @param ddl statement to be run
+   * @return block running the statement while holding a transaction scoped advisory lock on the table name,
+   * so concurrent runs wait for the first one to commit and then find the table
+   */
+  private static String serialized(String table, String ddl) {
+    return "DO $$ BEGIN PERFORM pg_advisory_xact_lock(hashtext('" + table + "')); " + ddl + "; END $$";
+  }
+
+  /**
+   * @param dataTypes data types as put in the configuration
+   * @return PostgreSQL types of the columns
+   */
+  public static List<String> getColumnTypes(List<String> dataTypes) {
+    List<String> columnTypes = new ArrayList<>();
+    for (String dataType : dataTypes) {
+      columnTypes.add(COLUMN_TYPE_MAP.get(dataType));
+    }
+    return columnTypes;
+  }
+
+}
@@ -0,0 +1,75 @@
+package flinkapp.sinks.dialect;
+
+import flinkapp.config.exception.ConfigException;
+import flinkapp.sinks.SinkWriter;
+
+import java.io.Serializable;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * SQL and write path specific to the database behind the JDBC sink
+ */
+public interface SinkDialect extends Serializable {
+
+  String MYSQL = "mysql";
+  String POSTGRESQL = "postgresql";
+
+  /**
+   * @return JDBC driver used when none is configured
+   */
+  String getDriverName();
+
+  /**
+   * @param table schema qualified table name
+   * @param columnNames columns to be inserted
+   * @return parameterized query inserting one row, ignoring duplicates
+   */
+  String getInsertQuery(String table, List<String> columnNames);
+
+  /**
+   * @param table schema qualified table to be created
+   * @param baseTable schema qualified table to copy the definition from
+   * @return DDL creating the table like the base table if it is missing
+   */
+  String getCreateTableStatement(String table, String baseTable);
+
+  /**
+   * @param table schema qualified table to be created
+   * @return DDL creating the table of the committed offsets, one row per sink table and topic partition, if it is missing
+   */
+  String getCreateOffsetsTableStatement(String table);
+
+  /**
+   * @param table schema qualified table of the committed offsets
+   * @return parameterized query upserting the sink table, topic, partition and offset, never lowering the stored offset
+   */
+  String getOffsetsUpsertQuery(String table);
+
+  /**
+   * @param connection open connection to the sink, owned by the writer
+   * @param columnNames columns of the sink tables
+   * @param columnTypes data types of the columns, as put in the configuration
+   * @return writer for the sink tables
+   * @throws SQLException thrown while setting up the connection
+   */
+  SinkWriter createWriter(Connection connection, List<String> columnNames, List<String> columnTypes)
+      throws SQLException;
+
+  /**
+   * @param name name of the dialect as put in the configuration
+   * @return the dialect
+   */
+  static SinkDialect forName(String name) {
+    switch (name) {
+      case MYSQL:
+        return new MySQLDialect();
+      case POSTGRESQL:
+        return new PostgreSQLDialect();
+      default:
+        throw new ConfigException("Unknown sink dialect " + name);
+    }
+  }
+
+}
@@ -0,0 +1,345 @@
+package flinkapp.sources;
+
+import flinkapp.util.KafkaUtil;
+import org.apache.flink.api.common.accumulators.LongCounter;
+import org.apache.flink.metrics.MetricGroup;
+import org.apache.flink.shaded.jackson2.com.fasterxml.jackson.databind.JsonNode;
+import org.apache.flink.shaded.jackson2.com.fasterxml.jackson.databind.node.ObjectNode;
+import org.apache.flink.streaming.api.functions.AssignerWithPeriodicWatermarks;
+import org.apache.flink.streaming.api.functions.AssignerWithPunctuatedWatermarks;
+import org.apache.flink.streaming.api.operators.StreamingRuntimeContext;
+import org.apache.flink.streaming.api.watermark.Watermark;
+import org.apache.flink.streaming.connectors.kafka.FlinkKafkaConsumer011;
+import org.apache.flink.streaming.connectors.kafka.KafkaDeserializationSchema;
+import org.apache.flink.streaming.connectors.kafka.config.OffsetCommitMode;
+import org.apache.flink.streaming.connectors.kafka.internal.Handover;
+import org.apache.flink.streaming.connectors.kafka.internals.AbstractFetcher;
+import org.apache.flink.streaming.connectors.kafka.internals.KafkaTopicPartition;
+import org.apache.flink.util.ExceptionUtils;
+import org.apache.flink.util.SerializedValue;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.InterruptException;
+import org.apache.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import static flinkapp.util.JSONConstants.*;
+
+/**
+ * Kafka consumer reading a fixed range of offsets from every partition of a topic
+ * Start offsets are inclusive and end offsets exclusive, the source finishes once
+ * the position of every partition assigned to the subtask reached its end offset
+ * Positions are taken from the offsets the fetcher starts from, so a restored job skips the partitions already done,
+ * and idle partitions are probed with a separate consumer, as the last offsets of a range may hold
+ * no record to be delivered (transaction markers, compacted records)
+ */
+public class BoundedKafkaConsumer extends FlinkKafkaConsumer011<ObjectNode> {
+
+  public static final String RECORDS_ACCUMULATOR = "backfill-records";
+
+  private static final Logger LOG = Logger.getLogger(BoundedKafkaConsumer.class);
+  private static final long PROBE_INTERVAL = 10000L;
+  private static final long PROBE_TIMEOUT = 1000L;
+
+  private final String topic;
+  private final Properties props;
+  private final HashMap<Integer, Long> startOffsets;
+  private final HashMap<Integer, Long> endOffsets;
+
+  private transient Object checkpointLock;
+  private transient Set<Integer> pendingPartitions;
+  private transient Map<Integer, Long> nextOffsets;
+  private transient LongCounter recordCounter;
+  private transient Thread probeThread;
+  private transient volatile boolean probing;
+
+  /**
+   * Constructor
+   * @param topic topic to be read
+   * @param deserializer deserialization schema of the messages
+   * @param props Kafka consumer properties
+   * @param startOffsets first offset to be read, per partition
+   * @param endOffsets offset to stop before, per partition
+   */
+  public BoundedKafkaConsumer(String topic, KafkaDeserializationSchema<ObjectNode> deserializer, Properties props,
+                              Map<Integer, Long> startOffsets, Map<Integer, Long> endOffsets) {
+    super(topic, deserializer, props);
+    this.topic = topic;
+    this.props = props;
+    this.startOffsets = new HashMap<>(startOffsets);
+    this.endOffsets = new HashMap<>(endOffsets);
+
+    Map<KafkaTopicPartition, Long> specificStartOffsets = new HashMap<>();
+    for (Map.Entry<Integer, Long> entry : startOffsets.entrySet()) {
+      specificStartOffsets.put(new KafkaTopicPartition(topic, entry.getKey()), entry.getValue());
+    }
+    setStartFromSpecificOffsets(specificStartOffsets);
+  }
+
+  /**
+   * Runs the Kafka consumer until all the partitions of this subtask are complete
+   * @param sourceContext context to emit the records to
+   * @throws Exception thrown by the Kafka consumer
+   */
+  @Override
+  public void run(SourceContext<ObjectNode> sourceContext) throws Exception {
+    recordCounter = getRuntimeContext().getLongCounter(RECORDS_ACCUMULATOR);
+    checkpointLock = sourceContext.getCheckpointLock();
+    pendingPartitions = new HashSet<>();
+    nextOffsets = new HashMap<>();
+
+    try {
+      super.run(new BoundedSourceContext(sourceContext));
+    } catch (Exception e) {
+      // cancelling closes the handover the fetch loop may be blocked on, which is not a failure once all is read
+      synchronized (checkpointLock) {
+        if (!pendingPartitions.isEmpty()
+            || !ExceptionUtils.findThrowable(e, Handover.ClosedException.class).isPresent()) {
+          throw e;
+        }
+      }
+    } finally {
+      stopProbe();
+    }
+  }
+
+  /**
+   * @return number of partitions of the topic the range covers
+   */
+  public int getPartitionCount() {
+    return endOffsets.size();
+  }
+
+  /**
+   * Finds the partitions of this subtask still short of their end offset before the fetcher starts
+   */
+  @Override
+  protected AbstractFetcher<ObjectNode, ?> createFetcher(
+      SourceContext<ObjectNode> sourceContext,
+      Map<KafkaTopicPartition, Long> assignedPartitionsWithInitialOffsets,
+      SerializedValue<AssignerWithPeriodicWatermarks<ObjectNode>> watermarksPeriodic,
+      SerializedValue<AssignerWithPunctuatedWatermarks<ObjectNode>> watermarksPunctuated,
+      StreamingRuntimeContext runtimeContext,
+      OffsetCommitMode offsetCommitMode,
+      MetricGroup consumerMetricGroup,
+      boolean useMetrics) throws Exception {
+
+    for (Map.Entry<KafkaTopicPartition, Long> entry : assignedPartitionsWithInitialOffsets.entrySet()) {
+      int partition = entry.getKey().getPartition();
+      if (!endOffsets.containsKey(partition)) {
+        continue;
+      }
+      // the initial offset is the last one read, or a negative sentinel if nothing was read yet
+      long nextOffset = Math.max(entry.getValue() + 1, startOffsets.getOrDefault(partition, 0L));
+      nextOffsets.put(partition, nextOffset);
+      if (nextOffset < endOffsets.get(partition)) {
+        pendingPartitions.add(partition);
+      }
+    }
+
+    AbstractFetcher<ObjectNode, ?> fetcher = super.createFetcher(sourceContext, assignedPartitionsWithInitialOffsets,
+        watermarksPeriodic, watermarksPunctuated, runtimeContext, offsetCommitMode, consumerMetricGroup, useMetrics);
+
+    int subtaskIndex = runtimeContext.getIndexOfThisSubtask();
+    if (pendingPartitions.isEmpty()) {
+      LOG.info("No partition left to backfill in subtask " + subtaskIndex);
+      // the fetch loop is not entered once cancelled
+      cancel();
+    } else {
+      LOG.info("Backfilling partitions " + pendingPartitions + " of topic " + topic + " in subtask " + subtaskIndex);
+      startProbe();
+    }
+    return fetcher;
+  }
+
+  /**
+   * @param partition partition of the record
+   * @param offset offset of the record
+   * @return true if the record lies within the range of its partition
+   */
+  private boolean isInRange(int partition, long offset) {
+    if (!pendingPartitions.contains(partition)) {
+      return false;
+    }
+    if (offset >= endOffsets.get(partition)) {
+      completePartition(partition);
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Marks the partition complete if the emitted record was the last one of its range
+   * @param partition partition of the record
+   * @param offset offset of the record
+   */
+  private void afterEmit(int partition, long offset) {
+    recordCounter.add(1L);
+    nextOffsets.put(partition, offset + 1);
+    if (offset + 1 >= endOffsets.get(partition)) {
+      completePartition(partition);
+    }
+  }
+
+  private void completePartition(int partition) {
+    pendingPartitions.remove(partition);
+    LOG.info("Partition " + partition + " of topic " + topic + " reached its end offset " + endOffsets.get(partition));
+
+    if (pendingPartitions.isEmpty()) {
+      LOG.info("All partitions reached their end offsets, stopping the consumer");
+      // stops the fetch loop, run() then returns and the source finishes
+      cancel();
+    }
+  }
+
+  private void startProbe() {
+    probing = true;
+    probeThread = new Thread(this::runProbe, "Backfill probe of " + topic);
+    probeThread.setDaemon(true);
+    probeThread.start();
+  }
+
+  private void stopProbe() {
+    probing = false;
+    if (probeThread != null) {
+      probeThread.interrupt();
+    }
+  }
+
+  private void runProbe() {
+    Map<Integer, Long> lastProbed = new HashMap<>();
+
+    try (KafkaConsumer<byte[], byte[]> consumer = KafkaUtil.createByteConsumer(props)) {
+      while (probing) {
+        Thread.sleep(PROBE_INTERVAL);
+        try {
+          probeIdlePartitions(consumer, lastProbed);
+        } catch (InterruptException e) {
+          return;
+        } catch (Exception e) {
+          LOG.warn("Could not probe the end of the backfilled partitions, retrying", e);
+        }
+      }
+    } catch (InterruptedException | InterruptException e) {
+      // stopped by run()
+    }
+  }
+
+  /**
+   * Completes the pending partitions which did not move since the last probe and whose position,
+   * read past the offsets holding no record, reached the end offset
+   * @param consumer consumer the partitions are probed with
+   * @param lastProbed next offset of every partition at the previous probe
+   */
+  private void probeIdlePartitions(KafkaConsumer<byte[], byte[]> consumer, Map<Integer, Long> lastProbed) {
+    Map<Integer, Long> idleOffsets = new HashMap<>();
+    synchronized (checkpointLock) {
+      for (Integer partition : pendingPartitions) {
+        Long nextOffset = nextOffsets.get(partition);
+        if (nextOffset.equals(lastProbed.put(partition, nextOffset))) {
+          idleOffsets.put(partition, nextOffset);
+        }
+      }
+    }
+    if (idleOffsets.isEmpty()) {
+      return;
+    }
+
+    List<TopicPartition> partitions = new ArrayList<>();
+    for (Integer partition : idleOffsets.keySet()) {
+      partitions.add(new TopicPartition(topic, partition));
+    }
+    consumer.assign(partitions);
+    for (TopicPartition partition : partitions) {
+      consumer.seek(partition, idleOffsets.get(partition.partition()));
+    }
+
+    ConsumerRecords<byte[], byte[]> records = consumer.poll(PROBE_TIMEOUT);
+    List<Integer> completed = new ArrayList<>();
+    for (TopicPartition partition : partitions) {
+      long endOffset = endOffsets.get(partition.partition());
+      // a record left in range is delivered by the fetcher, the position only moves past the range without one
+      boolean recordInRange = false;
+      for (ConsumerRecord<byte[], byte[]> record : records.records(partition)) {
+        recordInRange |= record.offset() < endOffset;
+      }
+      if (!recordInRange && consumer.position(partition) >= endOffset) {
+        completed.add(partition.partition());
+      }
+    }
+
+    synchronized (checkpointLock) {
+      for (Integer partition : completed) {
+        if (pendingPartitions.contains(partition)) {
+          completePartition(partition);
+        }
+      }
+    }
+  }
+
+  /**
+   * Source context dropping the records outside the configured range
+   */
+  private class BoundedSourceContext implements SourceContext<ObjectNode> {
+
+    private final SourceContext<ObjectNode> sourceContext;
+
+    private BoundedSourceContext(SourceContext<ObjectNode> sourceContext) {
+      this.sourceContext = sourceContext;
+    }
+
+    @Override
+    public void collect(ObjectNode element) {
+      JsonNode metadata = element.get(JSON_METADATA);
+      int partition = metadata.get(JSON_PARTITION).asInt();
+      long offset = metadata.get(JSON_OFFSET).asLong();
+
+      if (isInRange(partition, offset)) {
+        sourceContext.collect(element);
+        afterEmit(partition, offset);
+      }
+    }
+
+    @Override
+    public void collectWithTimestamp(ObjectNode element, long timestamp) {
+      JsonNode metadata = element.get(JSON_METADATA);
+      int partition = metadata.get(JSON_PARTITION).asInt();
+      long offset = metadata.get(JSON_OFFSET).asLong();
+
+      if (isInRange(partition, offset)) {
+        sourceContext.collectWithTimestamp(element, timestamp);
+        afterEmit(partition, offset);
+      }
+    }
+
+    @Override
+    public void emitWatermark(Watermark mark) {
+      sourceContext.emitWatermark(mark);
+    }
+
+    @Override
+    public void markAsTemporarilyIdle() {
+      sourceContext.markAsTemporarilyIdle();
+    }
+
+    @Override
+    public Object getCheckpointLock() {
+      return sourceContext.getCheckpointLock();
+    }
+
+    @Override
+    public void close() {
+      sourceContext.close();
+    }
+  }
+
+}
@@ -0,0 +1,72 @@
+package flinkapp.sources;
+
+import flinkapp.config.MappingConfig;
+import flinkapp.config.PropertiesLoader;
+import flinkapp.config.exception.ConfigException;
+import org.apache.flink.streaming.api.functions.source.SourceFunction;
+import org.apache.flink.streaming.api.watermark.Watermark;
+import org.apache.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Source watching a properties file for changes of the mapping configuration
+ * Every modification is parsed and validated here, away from the data path,
+ * and emitted to be broadcast to the mapper and the sink
+ * Invalid files are logged and ignored, the previous mapping stays in place
+ * The file must be readable from the task manager running this source
+ */
+public class ConfigFileSource implements SourceFunction<MappingConfig> {
+
+  private static final Logger LOG = Logger.getLogger(ConfigFileSource.class);
+
+  private final String fileName;
+  private final long pollInterval;
+  private final MappingConfig defaults;
+
+  private volatile boolean running = true;
+
+  /**
+   * Constructor
+   * @param fileName properties file holding the mapping overrides
+   * @param pollInterval milliseconds between two checks of the file
+   * @param defaults mapping used for the properties that are not set in the file
+   */
+  public ConfigFileSource(String fileName, long pollInterval, MappingConfig defaults) {
+    this.fileName = fileName;
+    this.pollInterval = pollInterval;
+    this.defaults = defaults;
+  }
+
+  @Override
+  public void run(SourceContext<MappingConfig> sourceContext) throws Exception {
+    // never hold back the event time of the data stream it is connected to
+    sourceContext.emitWatermark(new Watermark(Long.MAX_VALUE));
+
+    File file = new File(fileName);
+    long lastModified = 0L;
+
+    while (running) {
+      if (file.exists() && file.lastModified() != lastModified) {
+        lastModified = file.lastModified();
+        try {
+          MappingConfig mapping = MappingConfig.fromProperties(PropertiesLoader.loadFromFile(fileName), defaults);
+          LOG.info("Mapping loaded from " + fileName + ": " + mapping);
+          synchronized (sourceContext.getCheckpointLock()) {
+            sourceContext.collect(mapping);
+          }
+        } catch (IOException | ConfigException e) {
+          LOG.error("Ignoring invalid mapping in " + fileName, e);
+        }
+      }
+      Thread.sleep(pollInterval);
+    }
+  }
+
+  @Override
+  public void cancel() {
+    running = false;
+  }
+
+}
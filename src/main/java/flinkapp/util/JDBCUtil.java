@@ -4,6 +4,9 @@ import org.apache.flink.api.common.typeinfo.TypeInformation;
 import org.apache.flink.api.common.typeinfo.Types;
 import org.apache.log4j.Logger;
 
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
 import java.util.HashMap;
 import java.util.List;
 
@@ -26,6 +29,18 @@ public class JDBCUtil {
     put("decimal", Types.BIG_DEC);
   }};
 
+  /**
+   * Map of data types to java.sql.Types used to bind the statement parameters
+   */
+  private static final HashMap<String , Integer> SQL_TYPE_MAP = new HashMap<String , Integer>() {{
+    put("string", java.sql.Types.VARCHAR);
+    put("int", java.sql.Types.INTEGER);
+    put("long", java.sql.Types.BIGINT);
+    put("double", java.sql.Types.DOUBLE);
+    put("boolean", java.sql.Types.BOOLEAN);
+    put("decimal", java.sql.Types.DECIMAL);
+  }};
+
   /**
    * return type information of the row to be inserted in Flink sink
    * @param dataTypes data types as put in the configuration
@@ -42,4 +57,52 @@ public class JDBCUtil {
     return typesArray;
   }
 
+  /**
+   * return SQL types of the row to be inserted in the JDBC sink
+   * @param dataTypes data types as put in the configuration
+   * @return java.sql.Types for each column of the row
+   */
+  public static int[] getSqlTypes(List<String> dataTypes) {
+
+    int totalColumns = dataTypes.size();
+    int[] typesArray = new int[totalColumns];
+
+    for(int columnCounter = 0; columnCounter < totalColumns; columnCounter++) {
+      typesArray[columnCounter] = SQL_TYPE_MAP.get(dataTypes.get(columnCounter));
+    }
+    return typesArray;
+  }
+
+  /**
+   * enable multi-row batch inserts on MySQL urls, left untouched for other databases
+   * @param dbUrl JDBC url of the sink
+   * @return JDBC url with rewriteBatchedStatements turned on
+   */
+  public static String withBatchRewrite(String dbUrl) {
+    if (!dbUrl.startsWith("jdbc:mysql:") || dbUrl.contains("rewriteBatchedStatements")) {
+      return dbUrl;
+    }
+    return dbUrl + (dbUrl.contains("?") ? "&" : "?") + "rewriteBatchedStatements=true";
+  }
+
+  /**
+   * open a new connection to the sink database
+   * @param driverName JDBC driver class to be loaded
+   * @param dbUrl JDBC url of the sink
+   * @param username sink username
+   * @param password sink password
+   * @return an open JDBC connection, to be closed by the caller
+   * @throws SQLException if the driver is missing or the connection cannot be established
+   */
+  public static Connection getConnection(String driverName, String dbUrl, String username, String password)
+      throws SQLException {
+    try {
+      Class.forName(driverName);
+    } catch (ClassNotFoundException e) {
+      throw new SQLException("JDBC driver " + driverName + " not found in classpath", e);
+    }
+    LOG.info("Opening JDBC connection to " + dbUrl);
+    return DriverManager.getConnection(dbUrl, username, password);
+  }
+
 }
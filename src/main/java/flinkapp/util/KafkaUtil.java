@@ -0,0 +1,142 @@
+package flinkapp.util;
+
+import flinkapp.config.Configuration;
+import flinkapp.config.exception.ConfigException;
+import org.apache.flink.streaming.connectors.kafka.internals.KafkaTopicPartition;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndTimestamp;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * Kafka utilities class
+ */
+public class KafkaUtil {
+
+  private static final Logger LOG = Logger.getLogger(KafkaUtil.class);
+
+  /**
+   * parse a list of partition:offset pairs as put in the configuration
+   * @param name name of the configuration property
+   * @param partitionOffsets list of partition:offset pairs
+   * @return map of partition to offset
+   */
+  public static Map<Integer, Long> parsePartitionOffsets(String name, List<String> partitionOffsets) {
+    Map<Integer, Long> offsets = new HashMap<>();
+
+    for (String partitionOffset : partitionOffsets) {
+      String[] parts = partitionOffset.split("\\s*:\\s*");
+      if (parts.length != 2) {
+        throw new ConfigException(name, partitionOffset, "Expected a partition:offset pair");
+      }
+      try {
+        offsets.put(Integer.parseInt(parts[0]), Long.parseLong(parts[1]));
+      } catch (NumberFormatException e) {
+        throw new ConfigException(name, partitionOffset, "Expected a partition:offset pair");
+      }
+    }
+    return offsets;
+  }
+
+  /**
+   * resolve one offset for every partition of the topic
+   * explicit offsets win over the timestamp, partitions without either get the beginning (or end) of the log
+   * @param props Kafka consumer properties
+   * @param topic topic to resolve the offsets for
+   * @param explicitOffsets offsets given per partition
+   * @param timestamp epoch millis to look the offsets up for, negative if not set
+   * @param end whether the offsets bound the end of a range, defaults to the latest offsets if so
+   * @return map of partition to offset, sorted by partition
+   */
+  public static Map<Integer, Long> resolveOffsets(Properties props, String topic, Map<Integer, Long> explicitOffsets,
+                                                  long timestamp, boolean end) {
+    Map<Integer, Long> offsets = new TreeMap<>();
+
+    try (KafkaConsumer<byte[], byte[]> consumer = createByteConsumer(props)) {
+      List<PartitionInfo> partitionInfos = consumer.partitionsFor(topic);
+      if (partitionInfos == null || partitionInfos.isEmpty()) {
+        throw new ConfigException(Configuration.TOPIC_NAME, topic, "Topic does not exist");
+      }
+
+      List<TopicPartition> partitions = new ArrayList<>();
+      for (PartitionInfo partitionInfo : partitionInfos) {
+        partitions.add(new TopicPartition(topic, partitionInfo.partition()));
+      }
+
+      Map<TopicPartition, Long> latestOffsets = consumer.endOffsets(partitions);
+      Map<TopicPartition, Long> logOffsets = end ? latestOffsets : consumer.beginningOffsets(partitions);
+      Map<TopicPartition, OffsetAndTimestamp> timestampOffsets = new HashMap<>();
+
+      if (timestamp >= 0) {
+        Map<TopicPartition, Long> timestamps = new HashMap<>();
+        for (TopicPartition partition : partitions) {
+          timestamps.put(partition, timestamp);
+        }
+        timestampOffsets = consumer.offsetsForTimes(timestamps);
+      }
+
+      for (TopicPartition partition : partitions) {
+        if (explicitOffsets.containsKey(partition.partition())) {
+          offsets.put(partition.partition(), explicitOffsets.get(partition.partition()));
+        } else if (timestampOffsets.get(partition) != null) {
+          offsets.put(partition.partition(), timestampOffsets.get(partition).offset());
+        } else if (timestamp >= 0) {
+          // no message at or after the timestamp, the range is empty past this point
+          offsets.put(partition.partition(), latestOffsets.get(partition));
+        } else {
+          offsets.put(partition.partition(), logOffsets.get(partition));
+        }
+      }
+    }
+
+    LOG.info("Resolved " + (end ? "end" : "start") + " offsets of topic " + topic + ": " + offsets);
+    return offsets;
+  }
+
+  /**
+   * @param recordKey unique key of a row, the quoted topic, the partition and the offset joined by underscores
+   * @return topic and partition of the record
+   */
+  public static KafkaTopicPartition getKeyPartition(String recordKey) {
+    int offsetSeparator = recordKey.lastIndexOf('_');
+    int partitionSeparator = recordKey.lastIndexOf('_', offsetSeparator - 1);
+    String topic = recordKey.substring(0, partitionSeparator);
+    if (topic.length() >= 2 && topic.startsWith("\"") && topic.endsWith("\"")) {
+      topic = topic.substring(1, topic.length() - 1);
+    }
+    return new KafkaTopicPartition(topic, Integer.parseInt(recordKey.substring(partitionSeparator + 1, offsetSeparator)));
+  }
+
+  /**
+   * @param recordKey unique key of a row, the quoted topic, the partition and the offset joined by underscores
+   * @return offset of the record
+   */
+  public static long getKeyOffset(String recordKey) {
+    return Long.parseLong(recordKey.substring(recordKey.lastIndexOf('_') + 1));
+  }
+
+  /**
+   * create a consumer reading raw bytes, which never commits offsets for its group
+   * @param props Kafka consumer properties
+   * @return the consumer, to be closed by the caller
+   */
+  public static KafkaConsumer<byte[], byte[]> createByteConsumer(Properties props) {
+    Properties consumerProps = new Properties();
+    consumerProps.putAll(props);
+    consumerProps.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, ByteArrayDeserializer.class.getName());
+    consumerProps.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, ByteArrayDeserializer.class.getName());
+    consumerProps.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, "false");
+    return new KafkaConsumer<>(consumerProps);
+  }
+
+}
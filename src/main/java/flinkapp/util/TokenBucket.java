@@ -0,0 +1,64 @@
+package flinkapp.util;
+
+/**
+ * Token bucket limiting a rate of permits per second
+ * Permits are taken up front and the caller sleeps off the debt once it exceeds a few milliseconds,
+ * which keeps the average rate exact without sleeping on every call
+ */
+public class TokenBucket {
+
+  private static final long MIN_SLEEP_NANOS = 10_000_000L;
+
+  private double rate;
+  private double capacity;
+  private double tokens;
+  private long lastRefill;
+
+  /**
+   * Constructor
+   * @param rate permits per second, the bucket holds up to one second worth of permits
+   */
+  public TokenBucket(double rate) {
+    this.lastRefill = System.nanoTime();
+    setRate(rate);
+    this.tokens = capacity;
+  }
+
+  /**
+   * take permits, sleeping if the bucket is too far in debt
+   * @param permits number of permits
+   * @throws InterruptedException if interrupted while sleeping
+   */
+  public void acquire(long permits) throws InterruptedException {
+    refill();
+    tokens -= permits;
+
+    if (tokens < 0) {
+      long debtNanos = (long) (-tokens / rate * 1e9);
+      if (debtNanos >= MIN_SLEEP_NANOS) {
+        Thread.sleep(debtNanos / 1_000_000L, (int) (debtNanos % 1_000_000L));
+      }
+    }
+  }
+
+  /**
+   * @param rate new permits per second
+   */
+  public void setRate(double rate) {
+    refill();
+    this.rate = rate;
+    this.capacity = Math.max(rate, 1.0);
+    this.tokens = Math.min(tokens, capacity);
+  }
+
+  public double getRate() {
+    return rate;
+  }
+
+  private void refill() {
+    long now = System.nanoTime();
+    tokens = Math.min(capacity, tokens + (now - lastRefill) / 1e9 * rate);
+    lastRefill = now;
+  }
+
+}